@@ -0,0 +1,103 @@
+package com.projetolivraria.libraryapi.benchmark;
+
+import com.projetolivraria.libraryapi.model.entity.Book;
+import com.projetolivraria.libraryapi.model.repository.BookRepository;
+import com.projetolivraria.libraryapi.service.BookService;
+import com.projetolivraria.libraryapi.service.index.BookIndexLoader;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// contexto Spring sem a camada web, com H2 em memoria, para os benchmarks
+@SpringBootConfiguration
+@EnableAutoConfiguration
+@ComponentScan(basePackageClasses = BookService.class)
+@EntityScan(basePackageClasses = Book.class)
+@EnableJpaRepositories(basePackageClasses = BookRepository.class)
+@EnableCaching
+public class BenchmarkContext {
+
+    static final long SEED = 42;
+
+    private static final int SEED_BATCH = 5000;
+    private static final String INSERT = "insert into book (id, title, author, isbn, version) values (?, ?, ?, ?, 0)";
+
+    private static final String[] WORDS = {
+            "aventuras", "memorias", "historia", "segredo", "cidade", "noite", "mar", "jardim",
+            "viagem", "sombra", "luz", "tempo", "casa", "rio", "montanha", "caminho"
+    };
+    private static final String[] AUTHORS = {
+            "Cesar", "Fulano", "Ciclano", "Beltrano", "Machado", "Clarice", "Jorge", "Cecilia"
+    };
+
+    // propriedades extras (ex.: modo write-behind dos emprestimos) vem no formato chave=valor
+    public static ConfigurableApplicationContext start(String... properties) {
+        List<String> all = new ArrayList<>(Arrays.asList(
+                "spring.main.banner-mode=off",
+                "logging.level.root=warn",
+                "spring.jpa.show-sql=false",
+                "spring.cache.type=none",
+                "spring.datasource.generate-unique-name=true"));
+        all.addAll(Arrays.asList(properties));
+        return new SpringApplicationBuilder(BenchmarkContext.class)
+                .web(WebApplicationType.NONE)
+                .properties(all.toArray(new String[0]))
+                .run();
+    }
+
+    // gera sempre o mesmo catalogo (ids 1..books) para a mesma quantidade de livros
+    // insere por JDBC em lotes: com 10M de livros o caminho do JPA deixaria a carga mais lenta que o benchmark
+    public static void seed(JdbcTemplate jdbcTemplate, int books) {
+        Random random = new Random(SEED);
+        List<Object[]> batch = new ArrayList<>(SEED_BATCH);
+        for (int i = 0; i < books; i++) {
+            Book book = book(random, i);
+            batch.add(new Object[]{(long) i + 1, book.getTitle(), book.getAuthor(), Long.valueOf(book.getIsbn())});
+            if (batch.size() == SEED_BATCH) {
+                jdbcTemplate.batchUpdate(INSERT, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT, batch);
+        }
+        // a sequence pooled entrega blocos de 50: recomeca depois do ultimo id semeado
+        jdbcTemplate.execute("alter sequence book_seq restart with " + (books + 51));
+    }
+
+    public static void seed(ConfigurableApplicationContext context, int books) {
+        seed(context.getBean(JdbcTemplate.class), books);
+        context.getBean(BookIndexLoader.class).load();
+    }
+
+    public static Book book(Random random, int i) {
+        String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+        return Book.builder()
+                .title(title)
+                .author(AUTHORS[random.nextInt(AUTHORS.length)] + " " + WORDS[random.nextInt(WORDS.length)])
+                .isbn(isbn(i))
+                .build();
+    }
+
+    // ISBN-13 valido e unico por i: prefixo 978, nove digitos de i e o digito verificador
+    public static String isbn(long i) {
+        String digits = String.format("978%09d", i);
+        int sum = 0;
+        for (int d = 0; d < 12; d++) {
+            sum += (digits.charAt(d) - '0') * (d % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+}
@@ -0,0 +1,53 @@
+package com.projetolivraria.libraryapi.benchmark;
+
+import com.projetolivraria.libraryapi.model.entity.Book;
+import com.projetolivraria.libraryapi.service.BookService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+// BookServiceImp.save: existsByIsbn + insert + atualizacao dos indices, sempre com isbn novo
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BookSaveBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    int books;
+
+    ConfigurableApplicationContext context;
+    BookService service;
+    long next;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start();
+        service = context.getBean(BookService.class);
+        BenchmarkContext.seed(context, books);
+        next = books;
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Book save() {
+        long i = next++;
+        return service.save(Book.builder()
+                .title("benchmark " + i)
+                .author("Cesar")
+                .isbn(BenchmarkContext.isbn(i))
+                .build());
+    }
+}
@@ -0,0 +1,69 @@
+package com.projetolivraria.libraryapi.benchmark;
+
+import com.projetolivraria.libraryapi.model.entity.Book;
+import com.projetolivraria.libraryapi.model.repository.BookRepository;
+import com.projetolivraria.libraryapi.service.BookService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.concurrent.TimeUnit;
+
+// BookServiceImp.find: a consulta com Example (like '%x%') contra o indice de trigramas
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BookSearchBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    int books;
+
+    @Param({"segredo", "cidade noite"})
+    String title;
+
+    ConfigurableApplicationContext context;
+    BookRepository repository;
+    BookService service;
+    PageRequest page = PageRequest.of(0, 20);
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start();
+        repository = context.getBean(BookRepository.class);
+        service = context.getBean(BookService.class);
+        BenchmarkContext.seed(context, books);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Page<Book> exampleQuery() {
+        Book filter = Book.builder().title(title).build();
+        Example<Book> example = Example.of(filter,
+                ExampleMatcher
+                        .matching()
+                        .withIgnoreCase()
+                        .withIgnoreNullValues()
+                        .withStringMatcher(ExampleMatcher.StringMatcher.CONTAINING));
+        return repository.findAll(example, page);
+    }
+
+    @Benchmark
+    public Page<Book> trigramIndex() {
+        return service.find(Book.builder().title(title).build(), page);
+    }
+}
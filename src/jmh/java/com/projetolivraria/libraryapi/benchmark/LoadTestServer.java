@@ -0,0 +1,54 @@
+package com.projetolivraria.libraryapi.benchmark;
+
+import com.projetolivraria.libraryapi.LibraryApiApplication;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+// a aplicacao completa para o VirtualThreadLoadTest, com o catalogo semeado e uma latencia fixa por comando JDBC
+// (o H2 em memoria responde rapido demais para as threads ficarem paradas no banco como em producao)
+@Configuration
+public class LoadTestServer {
+
+    public static final String READY = "LOAD-TEST-SERVER-READY";
+
+    @Bean
+    public static BeanPostProcessor jdbcLatency(@Value("${loadtest.jdbc-latency-ms:20}") long latencyMs) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource) || latencyMs <= 0) {
+                    return bean;
+                }
+                return ProxyDataSourceBuilder.create((DataSource) bean)
+                        .beforeQuery((execInfo, queryInfoList) -> sleep(latencyMs))
+                        .build();
+            }
+        };
+    }
+
+    public static void main(String[] args) {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(LibraryApiApplication.class, LoadTestServer.class)
+                .properties("spring.main.banner-mode=off")
+                .run(args);
+        int books = context.getEnvironment().getProperty("loadtest.books", Integer.class, 10000);
+        BenchmarkContext.seed(context, books);
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        System.out.println(READY + " " + port + " " + books);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.projetolivraria.libraryapi.benchmark;
+
+import com.projetolivraria.libraryapi.api.service.LoanService;
+import com.projetolivraria.libraryapi.model.entity.Book;
+import com.projetolivraria.libraryapi.model.entity.Loan;
+import com.projetolivraria.libraryapi.service.journal.LoanWriteBehind;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+// criacao de emprestimo (LoanService.save), no modo sincrono e no write-behind com journal
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LoanBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    int books;
+
+    @Param({"false", "true"})
+    boolean writeBehind;
+
+    ConfigurableApplicationContext context;
+    LoanService service;
+    JdbcTemplate jdbcTemplate;
+    long next;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start(
+                "library.loans.write-behind.enabled=" + writeBehind,
+                "library.loans.write-behind.directory=target/jmh-loan-journal");
+        service = context.getBean(LoanService.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        BenchmarkContext.seed(context, books);
+        next = 1;
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Loan save() throws IOException {
+        if (next > books) {
+            reopen(); // todos os livros emprestados: devolve tudo e recomeca (custo diluido em "books" chamadas)
+        }
+        Loan loan = Loan.builder()
+                .book(Book.builder().id(next++).version(0l).build()) // livro semeado (versao 0), como o que vem do indice de isbn
+                .customer("Fulano")
+                .loanDate(LocalDate.now())
+                .build();
+        return service.save(loan);
+    }
+
+    private void reopen() throws IOException {
+        if (writeBehind) {
+            context.getBean(LoanWriteBehind.class).flush();
+        }
+        jdbcTemplate.update("update loan set returned = true, open_book_id = null where open_book_id is not null");
+        next = 1;
+    }
+}
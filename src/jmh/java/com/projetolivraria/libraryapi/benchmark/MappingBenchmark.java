@@ -0,0 +1,66 @@
+package com.projetolivraria.libraryapi.benchmark;
+
+import com.projetolivraria.libraryapi.api.dto.BookDTO;
+import com.projetolivraria.libraryapi.api.mapper.BookMapper;
+import com.projetolivraria.libraryapi.model.entity.Book;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// mapeamento de uma pagina de livros: ModelMapper (reflexao) contra o BookMapper escrito a mao
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MappingBenchmark {
+
+    ModelMapper modelMapper = new ModelMapper();
+    BookMapper bookMapper = new BookMapper();
+    List<Book> page;
+    BookDTO dto;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkContext.SEED);
+        page = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Book book = BenchmarkContext.book(random, i);
+            book.setId((long) i + 1);
+            page.add(book);
+        }
+        dto = bookMapper.toDto(page.get(0));
+        // a primeira chamada do ModelMapper monta o TypeMap; o benchmark mede o caminho quente
+        modelMapper.map(page.get(0), BookDTO.class);
+        modelMapper.map(dto, Book.class);
+    }
+
+    @Benchmark
+    public List<BookDTO> modelMapperPage() {
+        return page.stream().map(book -> modelMapper.map(book, BookDTO.class)).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<BookDTO> bookMapperPage() {
+        return page.stream().map(bookMapper::toDto).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public Book modelMapperToEntity() {
+        return modelMapper.map(dto, Book.class);
+    }
+
+    @Benchmark
+    public Book bookMapperToEntity() {
+        return bookMapper.toEntity(dto);
+    }
+}
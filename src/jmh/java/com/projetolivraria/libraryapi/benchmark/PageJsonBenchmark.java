@@ -0,0 +1,55 @@
+package com.projetolivraria.libraryapi.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.projetolivraria.libraryapi.api.dto.BookDTO;
+import com.projetolivraria.libraryapi.api.mapper.BookMapper;
+import com.projetolivraria.libraryapi.model.entity.Book;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// serializacao JSON da pagina devolvida pelo GET /api/books, com o ObjectMapper configurado como no Spring Boot
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PageJsonBenchmark {
+
+    @Param({"20", "100"})
+    int size;
+
+    ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    Page<BookDTO> page;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkContext.SEED);
+        BookMapper mapper = new BookMapper();
+        List<BookDTO> content = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Book book = BenchmarkContext.book(random, i);
+            book.setId((long) i + 1);
+            content.add(mapper.toDto(book));
+        }
+        page = new PageImpl<>(content, PageRequest.of(0, size), 10000);
+    }
+
+    @Benchmark
+    public byte[] serializePage() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+}
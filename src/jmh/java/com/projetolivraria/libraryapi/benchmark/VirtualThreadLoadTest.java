@@ -0,0 +1,192 @@
+package com.projetolivraria.libraryapi.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+// teste de carga: GET /api/books/{id} com N clientes em laco fechado, no pool de threads de plataforma do Tomcat
+// e no modo de threads virtuais; cada modo sobe numa JVM propria com o mesmo -Xmx/-Xss (mesma memoria)
+// mvn -Pbenchmark test-compile exec:exec@load-test [-Dload.args="-Dloadtest.concurrency=100,1000 ..."]
+// resultado em target/load-test.json
+public class VirtualThreadLoadTest {
+
+    static final int[] CONCURRENCY = ints(System.getProperty("loadtest.concurrency", "50,200,1000,2000"));
+    static final int DURATION_SECONDS = Integer.getInteger("loadtest.duration", 10);
+    static final int WARMUP_SECONDS = Integer.getInteger("loadtest.warmup", 3);
+    static final String HEAP = System.getProperty("loadtest.heap", "512m");
+    static final String STACK = System.getProperty("loadtest.stack", "1m");
+    static final int JDBC_LATENCY_MS = Integer.getInteger("loadtest.jdbc-latency-ms", 20);
+    static final int POOL = Integer.getInteger("loadtest.pool", 1000);
+    static final int BOOKS = Integer.getInteger("loadtest.books", 10000);
+
+    public static void main(String[] args) throws Exception {
+        List<String> results = new ArrayList<>();
+        System.out.printf("%-9s %8s %10s %9s %9s %9s %8s %9s%n", "mode", "clients", "req/s", "p50 ms", "p99 ms", "max ms", "errors", "rss MB");
+        for (boolean virtual : new boolean[]{false, true}) {
+            if (virtual && Runtime.version().feature() < 21) {
+                System.out.println("virtual: pulado, threads virtuais exigem JDK 21 (rodando " + Runtime.version() + ")");
+                continue;
+            }
+            Process server = start(virtual);
+            try {
+                int port = awaitReady(server);
+                for (int clients : CONCURRENCY) {
+                    run(port, clients, WARMUP_SECONDS);
+                    Result result = run(port, clients, DURATION_SECONDS);
+                    long rss = peakRssMb(server);
+                    String mode = virtual ? "virtual" : "platform";
+                    System.out.printf(Locale.ROOT, "%-9s %8d %10.0f %9.1f %9.1f %9.1f %8d %9d%n",
+                            mode, clients, result.throughput(), result.percentile(0.5), result.percentile(0.99), result.percentile(1.0), result.errors, rss);
+                    results.add(String.format(Locale.ROOT,
+                            "{\"mode\":\"%s\",\"clients\":%d,\"throughput\":%.1f,\"p50Ms\":%.2f,\"p99Ms\":%.2f,\"maxMs\":%.2f,\"errors\":%d,\"peakRssMb\":%d,"
+                                    + "\"heap\":\"%s\",\"stack\":\"%s\",\"jdbcLatencyMs\":%d,\"pool\":%d}",
+                            mode, clients, result.throughput(), result.percentile(0.5), result.percentile(0.99), result.percentile(1.0), result.errors, rss,
+                            HEAP, STACK, JDBC_LATENCY_MS, POOL));
+                }
+            } finally {
+                server.destroy();
+                server.waitFor();
+            }
+        }
+        Path out = Paths.get("target", "load-test.json");
+        Files.createDirectories(out.getParent());
+        Files.write(out, ("[" + String.join(",\n", results) + "]\n").getBytes(StandardCharsets.UTF_8));
+        System.out.println("Resultado em " + out);
+    }
+
+    private static Process start(boolean virtual) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<String> command = new ArrayList<>(Arrays.asList(
+                java, "-Xmx" + HEAP, "-Xss" + STACK,
+                "-cp", System.getProperty("java.class.path"),
+                LoadTestServer.class.getName(),
+                "--server.port=0",
+                "--library.virtual-threads.enabled=" + virtual,
+                "--spring.cache.type=none", // cada requisicao vai ao banco
+                "--spring.datasource.hikari.maximum-pool-size=" + POOL,
+                "--spring.jpa.show-sql=false",
+                "--logging.level.root=warn",
+                "--loadtest.jdbc-latency-ms=" + JDBC_LATENCY_MS,
+                "--loadtest.books=" + BOOKS));
+        return new ProcessBuilder(command).redirectErrorStream(true).start();
+    }
+
+    private static int awaitReady(Process server) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(server.getInputStream(), StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith(LoadTestServer.READY)) {
+                int port = Integer.parseInt(line.split(" ")[1]);
+                drain(reader);
+                return port;
+            }
+        }
+        throw new IllegalStateException("O servidor do teste de carga terminou antes de subir");
+    }
+
+    // clientes em laco fechado: cada um so manda a proxima requisicao quando a anterior volta
+    private static Result run(int port, int clients, int seconds) throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(Duration.ofSeconds(10)).build();
+        long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        Result result = new Result(seconds);
+        List<CompletableFuture<Void>> users = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            users.add(user(client, port, new Random(BenchmarkContext.SEED + i), deadline, result));
+        }
+        CompletableFuture.allOf(users.toArray(new CompletableFuture[0])).join();
+        return result;
+    }
+
+    private static CompletableFuture<Void> user(HttpClient client, int port, Random random, long deadline, Result result) {
+        if (System.nanoTime() >= deadline) {
+            return CompletableFuture.completedFuture(null);
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/books/" + (1 + random.nextInt(BOOKS))))
+                .timeout(Duration.ofSeconds(30))
+                .build();
+        long start = System.nanoTime();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, error) -> {
+                    result.record(System.nanoTime() - start, error == null && response.statusCode() == 200);
+                    return null;
+                })
+                .thenCompose(ignored -> user(client, port, random, deadline, result));
+    }
+
+    // pico de memoria residente da JVM do servidor (Linux)
+    private static long peakRssMb(Process server) {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc", String.valueOf(server.pid()), "status"))) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.replaceAll("\\D", "")) / 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // fora do Linux
+        }
+        return -1;
+    }
+
+    private static void drain(BufferedReader reader) {
+        Thread thread = new Thread(() -> {
+            try {
+                while (reader.readLine() != null) {
+                    // descarta o log do servidor para o pipe nao encher
+                }
+            } catch (IOException e) {
+                // servidor encerrado
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static int[] ints(String csv) {
+        return Arrays.stream(csv.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+
+    static final class Result {
+        final int seconds;
+        final List<Long> latencies = new ArrayList<>();
+        long errors;
+
+        Result(int seconds) {
+            this.seconds = seconds;
+        }
+
+        synchronized void record(long nanos, boolean ok) {
+            latencies.add(nanos);
+            if (!ok) {
+                errors++;
+            }
+        }
+
+        synchronized double throughput() {
+            return (latencies.size() - errors) / (double) seconds;
+        }
+
+        synchronized double percentile(double p) {
+            if (latencies.isEmpty()) {
+                return 0;
+            }
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+            int index = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+            return sorted[Math.max(0, index)] / 1_000_000.0;
+        }
+    }
+}
@@ -1,15 +1,23 @@
 package com.projetolivraria.libraryapi;
 
-import org.modelmapper.ModelMapper;
+import com.projetolivraria.libraryapi.api.mapper.BookMapper;
+import com.projetolivraria.libraryapi.api.mapper.LoanMapper;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 
 @SpringBootApplication
+@EnableCaching
 public class LibraryApiApplication {
 	@Bean
-	public ModelMapper modelMapper() {
-		return new ModelMapper();
+	public BookMapper bookMapper() {
+		return new BookMapper();
+	}
+
+	@Bean
+	public LoanMapper loanMapper() {
+		return new LoanMapper();
 	}
 
 	// onde starta a aplicação
@@ -1,6 +1,7 @@
 package com.projetolivraria.libraryapi.api;
 
 import com.projetolivraria.libraryapi.api.exception.ApiErros;
+import com.projetolivraria.libraryapi.api.exception.BatchException;
 import com.projetolivraria.libraryapi.api.exception.BusinessException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -27,6 +28,12 @@ public class ApplicationControllerAdvice {
         return new ApiErros(exception);
     }
 
+    @ExceptionHandler(BatchException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ApiErros handleBatchException(BatchException exception) {
+        return new ApiErros(exception);
+    }
+
     @ExceptionHandler(ResponseStatusException.class)
     public ResponseEntity handleResponseStatusException(ResponseStatusException exception) {
         return new ResponseEntity(new ApiErros(exception), exception.getStatus());
@@ -1,5 +1,7 @@
 package com.projetolivraria.libraryapi.api.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.projetolivraria.libraryapi.api.validation.ValidIsbn;
 import javax.validation.constraints.NotEmpty;
 import lombok.*;
 
@@ -15,8 +17,14 @@ public class BookDTO {
     private String title;
     @NotEmpty
     private String author;
+    // aceita ISBN-10 ou ISBN-13, com ou sem hifens; a resposta traz sempre o ISBN-13
     @NotEmpty
+    @ValidIsbn
     private String isbn;
 
+    // preenchido so no detalhe do livro; na pesquisa e o filtro ?available=
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean available;
+
 
 }
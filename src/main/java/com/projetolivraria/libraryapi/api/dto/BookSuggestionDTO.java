@@ -0,0 +1,18 @@
+package com.projetolivraria.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+// item do typeahead: o texto sugerido, se veio do titulo ou do autor e quantos livros tem esse valor
+public class BookSuggestionDTO {
+
+    private String text;
+    private String field;
+    private int books;
+}
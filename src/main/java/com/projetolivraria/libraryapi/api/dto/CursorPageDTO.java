@@ -0,0 +1,20 @@
+package com.projetolivraria.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+// pagina da paginacao por cursor: o cliente manda o "next" no parametro "after" para buscar a proxima
+public class CursorPageDTO<T> {
+
+    private List<T> content;
+    private int size;
+    private String next; // nulo quando nao ha mais paginas
+}
@@ -5,12 +5,19 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.LocalDate;
+
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 public class LoanDTO {
 
+    private Long id;
     private String isbn;
     private String customer;
+    // preenchidos so na pesquisa de emprestimos
+    private LocalDate loanDate;
+    private Boolean returned;
+    private BookDTO book;
 }
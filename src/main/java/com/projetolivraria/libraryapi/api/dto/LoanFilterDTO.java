@@ -0,0 +1,25 @@
+package com.projetolivraria.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDate;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+// parametros de GET /api/loans: ?isbn=&customer=&from=2021-01-01&to=2021-12-31&returned=false
+public class LoanFilterDTO {
+
+    private String isbn;
+    private String customer;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate from;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate to;
+    private Boolean returned;
+}
@@ -0,0 +1,16 @@
+package com.projetolivraria.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+// corpo do PATCH de devolucao: {"returned": true}
+public class ReturnedLoanDTO {
+
+    private Boolean returned;
+}
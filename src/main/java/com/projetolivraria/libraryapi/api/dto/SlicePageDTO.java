@@ -0,0 +1,21 @@
+package com.projetolivraria.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+// pagina da pesquisa sem total (?count=false): so diz se existe a proxima
+public class SlicePageDTO<T> {
+
+    private List<T> content;
+    private int number;
+    private int size;
+    private boolean hasNext;
+}
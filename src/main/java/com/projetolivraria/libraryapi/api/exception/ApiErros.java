@@ -19,6 +19,10 @@ public class ApiErros {
         this.errors = Arrays.asList(exception.getMessage());
     }
 
+    public ApiErros(BatchException exception) {
+        this.errors = exception.getErrors();
+    }
+
     public ApiErros(ResponseStatusException exception) {
         this.errors = Arrays.asList(exception.getReason());
     }
@@ -0,0 +1,18 @@
+package com.projetolivraria.libraryapi.api.exception;
+
+import java.util.List;
+
+// erro de negocio em uma carga em lote, com uma mensagem por item rejeitado
+public class BatchException extends BusinessException {
+
+    private final List<String> errors;
+
+    public BatchException(List<String> errors) {
+        super(String.join("; ", errors));
+        this.errors = errors;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+}
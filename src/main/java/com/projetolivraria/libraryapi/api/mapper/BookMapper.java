@@ -0,0 +1,34 @@
+package com.projetolivraria.libraryapi.api.mapper;
+
+import com.projetolivraria.libraryapi.api.dto.BookDTO;
+import com.projetolivraria.libraryapi.model.entity.Book;
+import com.projetolivraria.libraryapi.model.entity.Isbn;
+
+// conversao Book <-> BookDTO escrita a mao, sem reflexao em tempo de execucao
+public class BookMapper {
+
+    public Book toEntity(BookDTO dto) {
+        if (dto == null) {
+            return null;
+        }
+        return Book.builder()
+                .id(dto.getId())
+                .title(dto.getTitle())
+                .author(dto.getAuthor())
+                .isbn(Isbn.normalize(dto.getIsbn()))
+                .available(dto.getAvailable())
+                .build();
+    }
+
+    public BookDTO toDto(Book book) {
+        if (book == null) {
+            return null;
+        }
+        return BookDTO.builder()
+                .id(book.getId())
+                .title(book.getTitle())
+                .author(book.getAuthor())
+                .isbn(book.getIsbn())
+                .build();
+    }
+}
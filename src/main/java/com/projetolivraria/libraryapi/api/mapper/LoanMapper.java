@@ -0,0 +1,46 @@
+package com.projetolivraria.libraryapi.api.mapper;
+
+import com.projetolivraria.libraryapi.api.dto.LoanDTO;
+import com.projetolivraria.libraryapi.api.dto.LoanFilterDTO;
+import com.projetolivraria.libraryapi.model.repository.LoanFilter;
+import com.projetolivraria.libraryapi.model.entity.Isbn;
+import com.projetolivraria.libraryapi.model.entity.Loan;
+
+// conversao Loan <-> LoanDTO escrita a mao; o livro do emprestimo e resolvido pelo isbn no controller
+public class LoanMapper {
+
+    private final BookMapper bookMapper = new BookMapper();
+
+    public Loan toEntity(LoanDTO dto) {
+        if (dto == null) {
+            return null;
+        }
+        return Loan.builder()
+                .customer(dto.getCustomer())
+                .build();
+    }
+
+    public LoanDTO toDto(Loan loan) {
+        if (loan == null) {
+            return null;
+        }
+        return LoanDTO.builder()
+                .id(loan.getId())
+                .isbn(loan.getBook() == null ? null : loan.getBook().getIsbn())
+                .customer(loan.getCustomer())
+                .loanDate(loan.getLoanDate())
+                .returned(loan.getReturned())
+                .book(bookMapper.toDto(loan.getBook()))
+                .build();
+    }
+
+    public LoanFilter toFilter(LoanFilterDTO dto) {
+        return LoanFilter.builder()
+                .isbn(Isbn.normalize(dto.getIsbn()))
+                .customer(dto.getCustomer())
+                .from(dto.getFrom())
+                .to(dto.getTo())
+                .returned(dto.getReturned())
+                .build();
+    }
+}
@@ -1,84 +1,393 @@
 package com.projetolivraria.libraryapi.api.resource;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.projetolivraria.libraryapi.api.dto.BookDTO;
+import com.projetolivraria.libraryapi.api.dto.BookSuggestionDTO;
+import com.projetolivraria.libraryapi.api.dto.CursorPageDTO;
+import com.projetolivraria.libraryapi.api.dto.SlicePageDTO;
 import com.projetolivraria.libraryapi.api.exception.ApiErros;
+import com.projetolivraria.libraryapi.api.exception.BatchException;
 import com.projetolivraria.libraryapi.api.exception.BusinessException;
+import com.projetolivraria.libraryapi.api.mapper.BookMapper;
 import com.projetolivraria.libraryapi.model.entity.Book;
+import com.projetolivraria.libraryapi.model.repository.BookCursor;
+import com.projetolivraria.libraryapi.model.repository.BookFields;
+import com.projetolivraria.libraryapi.model.repository.BookSort;
 
 import com.projetolivraria.libraryapi.service.BookService;
-import org.modelmapper.ModelMapper;
+import com.projetolivraria.libraryapi.service.index.SuggestIndex;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import javax.validation.Validator;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/books") // cria a rota
 public class BookController {
 
+    // sufixo do ETag do detalhe de um livro emprestado
+    static final String LOANED = "-loaned";
+
     private BookService service;
-    private ModelMapper modelMapper;
+    private BookMapper mapper;
+    private Validator validator;
+    private ObjectWriter jsonWriter;
 
-    public BookController(BookService service, ModelMapper mapper) {
+    public BookController(BookService service, BookMapper mapper, Validator validator, ObjectMapper objectMapper) {
         this.service = service;
-        this.modelMapper = mapper;
+        this.mapper = mapper;
+        this.validator = validator;
+        this.jsonWriter = objectMapper.writerFor(BookDTO.class);
     }
 
     @PostMapping // diz que vai tratar o bloco para a rota
     @ResponseStatus(HttpStatus.CREATED)
     public BookDTO create(@RequestBody @Valid BookDTO dto) {
-        Book entity = modelMapper.map(dto, Book.class);
+        Book entity = mapper.toEntity(dto);
         entity = service.save(entity);
-        return modelMapper.map(entity, BookDTO.class);
+        return mapper.toDto(entity);
+    }
+
+    // carga de catalogo: valida o lote inteiro e so grava se nenhum item tiver erro
+    @PostMapping("batch")
+    @ResponseStatus(HttpStatus.CREATED)
+    public List<BookDTO> createBatch(@RequestBody List<BookDTO> dtos) {
+        if (dtos.isEmpty()) {
+            throw new BusinessException("Nenhum livro informado");
+        }
+        List<String> errors = new ArrayList<>();
+        for (int i = 0; i < dtos.size(); i++) {
+            String item = "[" + i + "] ";
+            validator.validate(dtos.get(i))
+                    .stream()
+                    .map(violation -> item + violation.getPropertyPath() + ": " + violation.getMessage())
+                    .sorted()
+                    .forEach(errors::add);
+        }
+        if (!errors.isEmpty()) {
+            throw new BatchException(errors);
+        }
+        List<Book> books = dtos.stream().map(mapper::toEntity).collect(Collectors.toList());
+        return service.saveAll(books)
+                .stream()
+                .map(mapper::toDto)
+                .collect(Collectors.toList());
     }
 
     @GetMapping("{id}") // indica que tem que passar um parametro a mais na url
-    public BookDTO get(@PathVariable long id){
-        return service
+    public ResponseEntity<BookDTO> get(@PathVariable long id, WebRequest request){
+        Book book = service
                 .getById(id)
-                .map(book -> modelMapper.map(book, BookDTO.class)) // encontrando o livro vai mapear para o bookDTO
                 .orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND)); // caso contrario lança uma exception
+        boolean available = service.isAvailable(id);
+        String etag = etag(book, available);
+        if (request.checkNotModified(etag)) {
+            return null; // 304 com o ETag, sem montar o corpo
+        }
+        BookDTO dto = mapper.toDto(book); // encontrando o livro vai mapear para o bookDTO
+        dto.setAvailable(available);
+        return ResponseEntity.ok().eTag(etag).body(dto);
     }
 
+    // ?fields=title,author: le da base e devolve so esses campos
+    @GetMapping(value = "{id}", params = "fields")
+    public ResponseEntity<Map<String, Object>> getFields(@PathVariable long id, @RequestParam String fields, WebRequest request) {
+        BookFields selected = BookFields.parse(fields);
+        Book book = service
+                .getById(id, selected)
+                .orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+        String etag = etag(book, selected);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(etag).body(selected.select(book));
+    }
+
+    // um unico DELETE; o 404 vem da quantidade de linhas apagadas
     @DeleteMapping("{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public void delete(@PathVariable long id){
-        Book book = service.getById(id).orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND)); // caso contrario lança uma exception
-        service.delete(book);
-
+        if (!service.deleteById(id)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }
     }
 
+    // If-Match opcional: com ele a escrita so acontece se o livro ainda estiver na versao que o cliente leu
     @PutMapping("{id}")
-    public BookDTO update( @PathVariable Long id, BookDTO dto) {
-       return service.getById(id).map(book -> {
-            book.setAuthor(dto.getAuthor());
-            book.setTitle(dto.getTitle());
-            book = service.update(book);
-            return modelMapper.map(book, BookDTO.class);
-        }).orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+    public ResponseEntity<BookDTO> update( @PathVariable Long id, BookDTO dto,
+                                           @RequestHeader(value = "If-Match", required = false) String ifMatch) {
+       Book book = service.getById(id).orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+       if (ifMatch != null && !matches(ifMatch, etag(book))) {
+           throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "Livro alterado desde a ultima leitura");
+       }
+       book.setAuthor(dto.getAuthor());
+       book.setTitle(dto.getTitle());
+       try {
+           book = service.update(book);
+       } catch (OptimisticLockingFailureException e) {
+           // outra escrita passou entre a leitura e o update
+           throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "Livro alterado desde a ultima leitura");
+       }
+       return ResponseEntity.ok().eTag(etag(book)).body(mapper.toDto(book));
+    }
 
+    // atualizacao parcial: so titulo e/ou autor do corpo, num unico UPDATE sem ler o livro antes
+    // com If-Match o UPDATE inclui a versao do ETag; sem linha alterada decide entre 412 e 404; o ETag vem da linha relida
+    @PatchMapping("{id}")
+    public ResponseEntity<Void> patch(@PathVariable Long id, @RequestBody BookDTO dto,
+                                      @RequestHeader(value = "If-Match", required = false) String ifMatch) {
+        if (dto.getIsbn() != null) {
+            throw new BusinessException("Isbn nao pode ser alterado");
+        }
+        Long expectedVersion = ifMatch == null ? null : versionOf(ifMatch, id);
+        Book changes = Book.builder().id(id).title(dto.getTitle()).author(dto.getAuthor()).build();
+        Optional<Book> patched = service.patch(changes, expectedVersion);
+        if (!patched.isPresent()) {
+            if (expectedVersion != null && service.getById(id).isPresent()) {
+                throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "Livro alterado desde a ultima leitura");
+            }
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }
+        return ResponseEntity.noContent().eTag(etag(patched.get())).build();
     }
 
+    // ?sort= so nas colunas de BookSort, todas com indice
     @GetMapping
-    public Page<BookDTO> find(BookDTO dto, Pageable pageRequest) {
-        Book filter = modelMapper.map(dto, Book.class);
+    public ResponseEntity<Page<BookDTO>> find(BookDTO dto, Pageable pageRequest, WebRequest request) {
+        BookSort.check(pageRequest.getSort());
+        Book filter = mapper.toEntity(dto);
         Page<Book> result = service.find(filter, pageRequest);
+        String etag = etag(result.getContent(), result.getTotalElements() + ":" + pageRequest);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        List<BookDTO> list = result.getContent()
+                .stream()
+                .map(mapper::toDto)
+                .collect(Collectors.toList());
+
+        return ResponseEntity.ok().eTag(etag).body(new PageImpl<BookDTO>(list, pageRequest, result.getTotalElements()));
+
+    }
+
+    // pesquisa sem count(*): ?count=false devolve so a pagina e se existe a proxima
+    @GetMapping(params = {"count=false", "!after", "!fields"})
+    public ResponseEntity<SlicePageDTO<BookDTO>> findSlice(BookDTO dto, Pageable pageRequest, WebRequest request) {
+        BookSort.check(pageRequest.getSort());
+        Book filter = mapper.toEntity(dto);
+        Slice<Book> result = service.findSlice(filter, pageRequest);
+        String etag = etag(result.getContent(), result.hasNext() + ":" + pageRequest);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        List<BookDTO> list = result.getContent()
+                .stream()
+                .map(mapper::toDto)
+                .collect(Collectors.toList());
+
+        return ResponseEntity.ok().eTag(etag).body(SlicePageDTO.<BookDTO>builder()
+                .content(list)
+                .number(pageRequest.isPaged() ? pageRequest.getPageNumber() : 0)
+                .size(list.size())
+                .hasNext(result.hasNext())
+                .build());
+    }
+
+    // pesquisa lendo so as colunas de ?fields=; aceita count=false como a pesquisa completa
+    @GetMapping(params = {"fields", "!after"})
+    public ResponseEntity<?> findFields(BookDTO dto, @RequestParam String fields, @RequestParam(defaultValue = "true") boolean count,
+                                        Pageable pageRequest, WebRequest request) {
+        BookSort.check(pageRequest.getSort());
+        Book filter = mapper.toEntity(dto);
+        BookFields selected = BookFields.parse(fields);
+        Slice<Book> result = count ? service.find(filter, pageRequest, selected) : service.findSlice(filter, pageRequest, selected);
+        String total = count ? String.valueOf(((Page<Book>) result).getTotalElements()) : String.valueOf(result.hasNext());
+        String etag = etag(result.getContent(), selected.key() + ":" + total + ":" + pageRequest);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        List<Map<String, Object>> list = result.getContent()
+                .stream()
+                .map(selected::select)
+                .collect(Collectors.toList());
+
+        if (count) {
+            return ResponseEntity.ok().eTag(etag).body(new PageImpl<>(list, pageRequest, ((Page<Book>) result).getTotalElements()));
+        }
+        return ResponseEntity.ok().eTag(etag).body(SlicePageDTO.<Map<String, Object>>builder()
+                .content(list)
+                .number(pageRequest.isPaged() ? pageRequest.getPageNumber() : 0)
+                .size(list.size())
+                .hasNext(result.hasNext())
+                .build());
+    }
+
+    // paginacao por cursor: ?after= para a primeira pagina, depois o "next" devolvido
+    @GetMapping(params = "after")
+    public ResponseEntity<CursorPageDTO<BookDTO>> findAfter(BookDTO dto, @RequestParam String after, Pageable pageRequest, WebRequest request) {
+        BookSort.check(pageRequest.getSort());
+        Book filter = mapper.toEntity(dto);
+        BookCursor cursor = after.isEmpty() ? BookCursor.first(pageRequest.getSort()) : BookCursor.decode(after);
+        Slice<Book> result = service.findAfter(filter, cursor, pageRequest.getPageSize());
+        String etag = etag(result.getContent(), after + ":" + result.hasNext());
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
         List<BookDTO> list = result.getContent()
                 .stream()
-                .map(entity -> modelMapper.map(entity, BookDTO.class))
+                .map(mapper::toDto)
+                .collect(Collectors.toList());
+
+        String next = null;
+        if (result.hasNext()) {
+            next = cursor.next(result.getContent().get(result.getNumberOfElements() - 1)).encode();
+        }
+        return ResponseEntity.ok().eTag(etag).body(CursorPageDTO.<BookDTO>builder().content(list).size(list.size()).next(next).build());
+    }
+
+    // typeahead da caixa de busca: ?q= e o prefixo digitado; responde da memoria, sem pesquisa nem count na base
+    @GetMapping("suggest")
+    public List<BookSuggestionDTO> suggest(@RequestParam String q, @RequestParam(defaultValue = "10") int limit) {
+        if (limit < 1 || limit > SuggestIndex.MAX_SUGGESTIONS) {
+            throw new BusinessException("Limite de sugestoes deve ficar entre 1 e " + SuggestIndex.MAX_SUGGESTIONS);
+        }
+        return service.suggest(q, limit)
+                .stream()
+                .map(suggestion -> BookSuggestionDTO.builder()
+                        .text(suggestion.getText())
+                        .field(suggestion.getField())
+                        .books(suggestion.getBooks())
+                        .build())
                 .collect(Collectors.toList());
+    }
+
+    // exporta o catalogo inteiro lendo a base por cursor e escrevendo direto na resposta
+    @GetMapping("export")
+    public void export(@RequestParam(defaultValue = "ndjson") String format, HttpServletResponse response) throws IOException {
+        boolean csv;
+        if ("csv".equalsIgnoreCase(format)) {
+            csv = true;
+            response.setContentType("text/csv");
+        } else if ("ndjson".equalsIgnoreCase(format)) {
+            csv = false;
+            response.setContentType("application/x-ndjson");
+        } else {
+            throw new BusinessException("Formato de exportacao nao suportado: " + format);
+        }
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+        if (csv) {
+            writer.write("id,title,author,isbn\n");
+        }
+        try {
+            service.export(book -> {
+                try {
+                    if (csv) {
+                        writer.write(book.getId() + "," + csvField(book.getTitle()) + "," + csvField(book.getAuthor()) + "," + csvField(book.getIsbn()) + "\n");
+                    } else {
+                        writer.write(jsonWriter.writeValueAsString(mapper.toDto(book)));
+                        writer.write('\n');
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+    }
+
+    // ETag forte do livro: muda a cada update pelo @Version
+    static String etag(Book book) {
+        return "\"" + book.getId() + "-" + book.getVersion() + "\"";
+    }
+
+    // ETag da projecao: a mesma versao com outros campos e outra representacao, e nao vale como a do livro inteiro
+    static String etag(Book book, BookFields fields) {
+        String etag = etag(book);
+        return etag.substring(0, etag.length() - 1) + ";" + fields.key() + "\"";
+    }
+
+    // ETag do detalhe: emprestar ou devolver nao muda a versao, entao o livro emprestado ganha um sufixo;
+    // o If-Match do PUT e do PATCH aceita os dois
+    static String etag(Book book, boolean available) {
+        String etag = etag(book);
+        return available ? etag : etag.substring(0, etag.length() - 1) + LOANED + "\"";
+    }
+
+    // ETag forte da pagina: ids e versoes do conteudo mais o que define a pagina (total, pagina pedida, cursor)
+    static String etag(List<Book> books, String page) {
+        StringBuilder key = new StringBuilder(page);
+        books.forEach(book -> key.append('|').append(book.getId()).append('-').append(book.getVersion()));
+        return "\"" + DigestUtils.md5DigestAsHex(key.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
 
-        return new PageImpl<BookDTO>(list, pageRequest, result.getTotalElements());
+    // versao do If-Match do PATCH; "*" aceita qualquer versao (null)
+    private static Long versionOf(String ifMatch, Long id) {
+        String value = withoutAvailability(ifMatch.trim());
+        if (value.equals("*")) {
+            return null;
+        }
+        String prefix = "\"" + id + "-";
+        if (value.startsWith(prefix) && value.endsWith("\"")) {
+            try {
+                return Long.valueOf(value.substring(prefix.length(), value.length() - 1));
+            } catch (NumberFormatException e) {
+                // cai no 412 abaixo
+            }
+        }
+        throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "Livro alterado desde a ultima leitura");
+    }
 
+    private static boolean matches(String ifMatch, String etag) {
+        for (String candidate : ifMatch.split(",")) {
+            String value = withoutAvailability(candidate.trim());
+            if (value.equals("*") || value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
     }
 
+    private static String withoutAvailability(String etag) {
+        String suffix = LOANED + "\"";
+        return etag.endsWith(suffix) ? etag.substring(0, etag.length() - suffix.length()) + "\"" : etag;
+    }
 
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
 
 }
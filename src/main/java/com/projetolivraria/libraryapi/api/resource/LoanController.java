@@ -1,16 +1,26 @@
 package com.projetolivraria.libraryapi.api.resource;
 
+import com.projetolivraria.libraryapi.api.dto.CursorPageDTO;
 import com.projetolivraria.libraryapi.api.dto.LoanDTO;
+import com.projetolivraria.libraryapi.api.dto.LoanFilterDTO;
+import com.projetolivraria.libraryapi.api.dto.ReturnedLoanDTO;
+import com.projetolivraria.libraryapi.api.dto.SlicePageDTO;
+import com.projetolivraria.libraryapi.api.exception.BusinessException;
+import com.projetolivraria.libraryapi.api.mapper.LoanMapper;
 import com.projetolivraria.libraryapi.api.service.LoanService;
 import com.projetolivraria.libraryapi.model.entity.Book;
 import com.projetolivraria.libraryapi.model.entity.Loan;
 import com.projetolivraria.libraryapi.service.BookService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("api/loans")
@@ -19,6 +29,7 @@ public class LoanController {
 
     private final LoanService service;
     private final BookService bookService;
+    private final LoanMapper mapper;
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
@@ -26,16 +37,68 @@ public class LoanController {
         Book book = bookService
                 .getBookByIsbn(dto.getIsbn())
                 .orElseThrow(() -> new ResponseStatusException( HttpStatus.BAD_REQUEST, "Book not found for passed isbn"));
-        Loan entity = Loan.builder()
-                .book(book)
-                .customer(dto.getCustomer())
-                .loanDate(LocalDate.now())
-                .build();
+        Loan entity = mapper.toEntity(dto);
+        entity.setBook(book);
+        entity.setLoanDate(LocalDate.now());
         entity = service.save(entity);
 
         return entity.getId();
     }
 
+    // pesquisa de emprestimos, do mais novo para o mais antigo, sem total; com prefixo do cliente agrupa por cliente,
+    // com faixa de datas vai da data mais recente (ordem do indice de cada filtro, ver LoanRepositoryImpl)
+    @GetMapping
+    public SlicePageDTO<LoanDTO> find(LoanFilterDTO dto, Pageable pageRequest) {
+        Slice<Loan> result = service.find(mapper.toFilter(dto), pageRequest);
+        List<LoanDTO> list = result.getContent()
+                .stream()
+                .map(mapper::toDto)
+                .collect(Collectors.toList());
+
+        return SlicePageDTO.<LoanDTO>builder()
+                .content(list)
+                .number(pageRequest.isPaged() ? pageRequest.getPageNumber() : 0)
+                .size(list.size())
+                .hasNext(result.hasNext())
+                .build();
+    }
+
+    // paginacao por cursor: ?after= para a primeira pagina, depois o "next" devolvido (id do ultimo emprestimo)
+    @GetMapping(params = "after")
+    public CursorPageDTO<LoanDTO> findAfter(LoanFilterDTO dto, @RequestParam String after, Pageable pageRequest) {
+        Long afterId = null;
+        if (!after.isEmpty()) {
+            try {
+                afterId = Long.valueOf(after);
+            } catch (NumberFormatException e) {
+                throw new BusinessException("Cursor invalido");
+            }
+        }
+        Slice<Loan> result = service.findAfter(mapper.toFilter(dto), afterId, pageRequest.getPageSize());
+        List<LoanDTO> list = result.getContent()
+                .stream()
+                .map(mapper::toDto)
+                .collect(Collectors.toList());
+
+        String next = result.hasNext() ? String.valueOf(list.get(list.size() - 1).getId()) : null;
+        return CursorPageDTO.<LoanDTO>builder().content(list).size(list.size()).next(next).build();
+    }
+
+    // devolucao do livro: 204 quando devolveu agora, 409 se ja estava devolvido (repetir o PATCH nao muda nada)
+    @PatchMapping("{id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void returnBook(@PathVariable Long id, @RequestBody ReturnedLoanDTO dto) {
+        if (!Boolean.TRUE.equals(dto.getReturned())) {
+            throw new BusinessException("Somente a devolucao (returned = true) e suportada");
+        }
+        switch (service.returnLoan(id)) {
+            case NOT_FOUND:
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+            case ALREADY_RETURNED:
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Emprestimo ja devolvido");
+            default:
+        }
+    }
 
 
 }
@@ -0,0 +1,53 @@
+package com.projetolivraria.libraryapi.api.resource;
+
+import com.projetolivraria.libraryapi.api.dto.BookDTO;
+import com.projetolivraria.libraryapi.api.mapper.BookMapper;
+import com.projetolivraria.libraryapi.service.ReactiveBookService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// leitura nao bloqueante do catalogo: a thread do servlet e liberada enquanto o R2DBC consulta o banco
+@RestController
+@RequestMapping("/api/reactive/books")
+@ConditionalOnProperty(prefix = "library.reactive", name = "enabled", havingValue = "true")
+public class ReactiveBookController {
+
+    private ReactiveBookService service;
+    private BookMapper mapper;
+
+    public ReactiveBookController(ReactiveBookService service, BookMapper mapper) {
+        this.service = service;
+        this.mapper = mapper;
+    }
+
+    @GetMapping("{id}")
+    public Mono<ResponseEntity<BookDTO>> get(@PathVariable long id) {
+        return service.getById(id)
+                .map(book -> ResponseEntity.ok(mapper.toDto(book)))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    // um livro por linha (ndjson), escrito conforme chega do banco; o proximo so e pedido depois de escrito (backpressure)
+    // continuar a pesquisa: after = id do ultimo livro recebido; limit entre 1 e ReactiveBookService.MAX_LIMIT
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<BookDTO> find(BookDTO dto,
+                              @RequestParam(defaultValue = "0") long after,
+                              @RequestParam(defaultValue = "1000") int limit) {
+        if (limit < 1 || limit > ReactiveBookService.MAX_LIMIT) {
+            // ResponseStatusException e nao BusinessException: o corpo de erro em json nao sai numa resposta ndjson,
+            // e o status ainda chega ao cliente
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit deve ficar entre 1 e " + ReactiveBookService.MAX_LIMIT);
+        }
+        return service.find(mapper.toEntity(dto), after, limit).map(mapper::toDto);
+    }
+}
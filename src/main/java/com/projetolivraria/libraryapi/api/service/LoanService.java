@@ -1,7 +1,24 @@
 package com.projetolivraria.libraryapi.api.service;
 
 import com.projetolivraria.libraryapi.model.entity.Loan;
+import com.projetolivraria.libraryapi.model.repository.LoanFilter;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
 public interface LoanService {
     Loan save(Loan loan);
+
+    ReturnResult returnLoan(Long id);
+
+    // pesquisa sem count, do emprestimo mais novo para o mais antigo (na ordem do indice do filtro)
+    Slice<Loan> find(LoanFilter filter, Pageable pageRequest);
+
+    // paginacao por chave: emprestimos depois de afterId na ordem da pesquisa (nulo = primeira pagina)
+    Slice<Loan> findAfter(LoanFilter filter, Long afterId, int size);
+
+    enum ReturnResult {
+        RETURNED,
+        ALREADY_RETURNED,
+        NOT_FOUND
+    }
 }
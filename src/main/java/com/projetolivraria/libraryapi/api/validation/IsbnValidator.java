@@ -0,0 +1,15 @@
+package com.projetolivraria.libraryapi.api.validation;
+
+import com.projetolivraria.libraryapi.model.entity.Isbn;
+
+import javax.validation.ConstraintValidator;
+import javax.validation.ConstraintValidatorContext;
+
+public class IsbnValidator implements ConstraintValidator<ValidIsbn, String> {
+
+    // vazio fica com o @NotEmpty
+    @Override
+    public boolean isValid(String value, ConstraintValidatorContext context) {
+        return value == null || value.isEmpty() || Isbn.isValid(value);
+    }
+}
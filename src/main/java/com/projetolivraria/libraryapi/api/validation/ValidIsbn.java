@@ -0,0 +1,21 @@
+package com.projetolivraria.libraryapi.api.validation;
+
+import javax.validation.Constraint;
+import javax.validation.Payload;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// ISBN-10 ou ISBN-13 com digito verificador correto; hifens e espacos sao aceitos
+@Target({ElementType.FIELD, ElementType.PARAMETER})
+@Retention(RetentionPolicy.RUNTIME)
+@Constraint(validatedBy = IsbnValidator.class)
+public @interface ValidIsbn {
+
+    String message() default "Isbn invalido";
+
+    Class<?>[] groups() default {};
+
+    Class<? extends Payload>[] payload() default {};
+}
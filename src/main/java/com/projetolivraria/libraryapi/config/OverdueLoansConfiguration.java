@@ -0,0 +1,26 @@
+package com.projetolivraria.libraryapi.config;
+
+import com.projetolivraria.libraryapi.service.overdue.OverdueNotifier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// varredura de emprestimos atrasados e entrega dos avisos da outbox, agendadas so com library.loans.overdue.enabled=true
+@Slf4j
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(prefix = "library.loans.overdue", name = "enabled", havingValue = "true")
+public class OverdueLoansConfiguration {
+
+    // sem outro OverdueNotifier na aplicacao os avisos vao para o log
+    @Bean
+    @ConditionalOnMissingBean
+    public OverdueNotifier overdueNotifier() {
+        return notifications -> notifications.forEach(notification ->
+                log.info("Emprestimo {} atrasado: cliente {}, livro {}, emprestado em {}",
+                        notification.getLoanId(), notification.getCustomer(), notification.getBookId(), notification.getLoanDate()));
+    }
+}
@@ -0,0 +1,73 @@
+package com.projetolivraria.libraryapi.config;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+// cliente R2DBC da leitura reativa, so com library.reactive.enabled=true;
+// sem library.reactive.r2dbc-url abre a mesma base H2 em memoria do JPA
+// o ConnectionFactory nao vira bean: com um no contexto o Spring Boot deixa de criar o DataSource do JPA,
+// por isso o pool e fechado aqui mesmo quando o contexto termina
+@Configuration
+@ConditionalOnProperty(prefix = "library.reactive", name = "enabled", havingValue = "true")
+public class ReactiveDatabaseConfiguration implements DisposableBean {
+
+    static final String H2_MEM = "jdbc:h2:mem:";
+
+    private ConnectionPool pool;
+
+    // conexoes reaproveitadas entre consultas: sem o pool cada leitura abriria (e fecharia) uma conexao nova
+    @Bean
+    public DatabaseClient databaseClient(DataSourceProperties dataSourceProperties,
+                                         @Value("${library.reactive.r2dbc-url:}") String r2dbcUrl,
+                                         @Value("${library.reactive.pool-size:10}") int poolSize) {
+        ConnectionFactory connectionFactory;
+        if (!r2dbcUrl.isEmpty()) {
+            connectionFactory = ConnectionFactories.get(r2dbcUrl);
+        } else {
+            ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(r2dbcUrl(dataSourceProperties.determineUrl()))
+                    .mutate()
+                    .option(ConnectionFactoryOptions.USER, dataSourceProperties.determineUsername())
+                    .option(ConnectionFactoryOptions.PASSWORD, nullToEmpty(dataSourceProperties.determinePassword()))
+                    .build();
+            connectionFactory = ConnectionFactories.get(options);
+        }
+        pool = new ConnectionPool(ConnectionPoolConfiguration.builder(connectionFactory)
+                .initialSize(1)
+                .maxSize(poolSize)
+                .build());
+        return DatabaseClient.create(pool);
+    }
+
+    @Override
+    public void destroy() {
+        if (pool != null) {
+            pool.dispose();
+        }
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    static String r2dbcUrl(String jdbcUrl) {
+        if (jdbcUrl == null || !jdbcUrl.startsWith(H2_MEM)) {
+            throw new IllegalStateException("Informe library.reactive.r2dbc-url para a leitura reativa fora do H2 em memoria: " + jdbcUrl);
+        }
+        String name = jdbcUrl.substring(H2_MEM.length());
+        int options = name.indexOf(';');
+        if (options >= 0) {
+            name = name.substring(0, options);
+        }
+        return "r2dbc:h2:mem:///" + name + "?options=DB_CLOSE_DELAY=-1";
+    }
+}
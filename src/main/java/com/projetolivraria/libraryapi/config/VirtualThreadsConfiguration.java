@@ -0,0 +1,44 @@
+package com.projetolivraria.libraryapi.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// modo opcional: o Tomcat atende cada requisicao (controller, servico e JDBC) numa thread virtual
+// em vez do pool limitado de threads de plataforma; exige JDK 21 em tempo de execucao
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "library.virtual-threads", name = "enabled", havingValue = "true")
+public class VirtualThreadsConfiguration {
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService virtualThreadExecutor() {
+        return newVirtualThreadPerTaskExecutor();
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(ExecutorService virtualThreadExecutor) {
+        return protocolHandler -> {
+            protocolHandler.setExecutor(virtualThreadExecutor);
+            log.info("Requisicoes HTTP atendidas em threads virtuais");
+        };
+    }
+
+    // por reflexao para o build continuar compilando em JDKs sem threads virtuais
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("library.virtual-threads.enabled exige JDK 21 ou superior, rodando em "
+                    + System.getProperty("java.version"));
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Nao foi possivel criar o executor de threads virtuais", e);
+        }
+    }
+}
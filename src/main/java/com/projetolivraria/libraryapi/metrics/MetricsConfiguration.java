@@ -0,0 +1,34 @@
+package com.projetolivraria.libraryapi.metrics;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// instrumentacao: @Timed nos servicos e contagem de SQL por requisicao
+@Configuration
+public class MetricsConfiguration {
+
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry registry) {
+        return new TimedAspect(registry);
+    }
+
+    @Bean
+    public SqlStatistics sqlStatistics(@Value("${library.sql-statistics.detailed.enabled:false}") boolean detailed) {
+        return new SqlStatistics(detailed);
+    }
+
+    // static: BeanPostProcessor precisa existir antes dos demais beans da configuracao
+    @Bean
+    public static SqlStatisticsDataSourcePostProcessor sqlStatisticsDataSourcePostProcessor(ObjectProvider<SqlStatistics> statistics) {
+        return new SqlStatisticsDataSourcePostProcessor(statistics);
+    }
+
+    @Bean
+    public SqlMetricsFilter sqlMetricsFilter(SqlStatistics statistics, MeterRegistry registry) {
+        return new SqlMetricsFilter(statistics, registry);
+    }
+}
@@ -0,0 +1,52 @@
+package com.projetolivraria.libraryapi.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+// registra quantos comandos SQL e quantas linhas cada requisicao usou, por endpoint
+// ex.: um GET /api/books paginado pela base mostra 2 comandos (pagina + count)
+@Slf4j
+public class SqlMetricsFilter extends OncePerRequestFilter {
+
+    private final SqlStatistics statistics;
+    private final MeterRegistry registry;
+
+    public SqlMetricsFilter(SqlStatistics statistics, MeterRegistry registry) {
+        this.statistics = statistics;
+        this.registry = registry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        statistics.begin();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            SqlStatistics.Counts counts = statistics.end();
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            String uri = pattern == null ? "UNKNOWN" : pattern.toString();
+            summary("library.request.sql.statements", request.getMethod(), uri).record(counts.getStatements());
+            if (statistics.isCountingRows()) {
+                summary("library.request.sql.rows", request.getMethod(), uri).record(counts.getRows());
+            }
+            log.debug("{} {}: {} comandos SQL, {} linhas", request.getMethod(), uri, counts.getStatements(), counts.getRows());
+        }
+    }
+
+    private DistributionSummary summary(String name, String method, String uri) {
+        return DistributionSummary.builder(name)
+                .tag("method", method)
+                .tag("uri", uri)
+                .register(registry);
+    }
+}
@@ -0,0 +1,100 @@
+package com.projetolivraria.libraryapi.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.MethodExecutionContext;
+import net.ttddyy.dsproxy.listener.MethodExecutionListener;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+// conta os comandos JDBC executados e, no modo detalhado, as linhas lidas (ResultSet.next), no total e por requisicao
+public class SqlStatistics implements QueryExecutionListener, MethodExecutionListener, MeterBinder {
+
+    private final ThreadLocal<Counts> current = new ThreadLocal<>();
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final boolean countingRows;
+
+    // contar linhas exige um proxy em cada ResultSet: custo por linha, so para diagnostico
+    public SqlStatistics(boolean countingRows) {
+        this.countingRows = countingRows;
+    }
+
+    public boolean isCountingRows() {
+        return countingRows;
+    }
+
+    // comeca a contar na thread atual (uma requisicao)
+    public void begin() {
+        current.set(new Counts());
+    }
+
+    public Counts end() {
+        Counts counts = current.get();
+        current.remove();
+        return counts == null ? new Counts() : counts;
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    // um batch conta como um comando: e uma ida ao banco
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        statements.increment();
+        Counts counts = current.get();
+        if (counts != null) {
+            counts.statements++;
+        }
+    }
+
+    @Override
+    public void beforeMethod(MethodExecutionContext executionContext) {
+    }
+
+    @Override
+    public void afterMethod(MethodExecutionContext executionContext) {
+        if (executionContext.getTarget() instanceof ResultSet
+                && "next".equals(executionContext.getMethod().getName())
+                && Boolean.TRUE.equals(executionContext.getResult())) {
+            rows.increment();
+            Counts counts = current.get();
+            if (counts != null) {
+                counts.rows++;
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("library.sql.statements", statements, LongAdder::sum)
+                .description("Comandos JDBC executados")
+                .register(registry);
+        if (!countingRows) {
+            return;
+        }
+        FunctionCounter.builder("library.sql.rows", rows, LongAdder::sum)
+                .description("Linhas lidas dos ResultSets")
+                .register(registry);
+    }
+
+    public static class Counts {
+        long statements;
+        long rows;
+
+        public long getStatements() {
+            return statements;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+    }
+}
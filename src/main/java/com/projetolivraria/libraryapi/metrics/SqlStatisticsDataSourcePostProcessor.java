@@ -0,0 +1,31 @@
+package com.projetolivraria.libraryapi.metrics;
+
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import javax.sql.DataSource;
+
+// envolve o DataSource num proxy que avisa o SqlStatistics a cada comando; os ResultSets so no modo detalhado
+public class SqlStatisticsDataSourcePostProcessor implements BeanPostProcessor {
+
+    private final ObjectProvider<SqlStatistics> statistics;
+
+    public SqlStatisticsDataSourcePostProcessor(ObjectProvider<SqlStatistics> statistics) {
+        this.statistics = statistics;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof DataSource)) {
+            return bean;
+        }
+        SqlStatistics listener = statistics.getObject();
+        ProxyDataSourceBuilder builder = ProxyDataSourceBuilder.create(beanName, (DataSource) bean)
+                .listener(listener);
+        if (listener.isCountingRows()) {
+            builder.methodListener(listener).proxyResultSet();
+        }
+        return builder.build();
+    }
+}
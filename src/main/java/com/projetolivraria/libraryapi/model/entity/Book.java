@@ -9,23 +9,44 @@ import lombok.NoArgsConstructor;
 import javax.persistence.*;
 
 @Data // subistitui o @gatter e @satter
-@Builder
+@Builder(toBuilder = true)
 @AllArgsConstructor // com o @builder é necessario adicionar essa classe
 @NoArgsConstructor
 @Entity // diz para a classe que ela é uma entidade
-@Table
+// unique: garantia final contra isbn repetido quando o filtro de Bloom pula a consulta
+// os indices sao criados pelas migracoes do flyway; aqui so documentam o que a base tem
+@Table(indexes = {
+        @Index(name = "idx_book_isbn", columnList = "isbn", unique = true), // busca por isbn, filtro de emprestimos por isbn e ordem crescente por isbn
+        @Index(name = "idx_book_title_id", columnList = "title, id"), // ordenacao por titulo (BookSort)
+        @Index(name = "idx_book_title_id_desc", columnList = "title desc, id desc"),
+        @Index(name = "idx_book_author_id", columnList = "author, id"),
+        @Index(name = "idx_book_author_id_desc", columnList = "author desc, id desc"),
+        @Index(name = "idx_book_isbn_id_desc", columnList = "isbn desc, id desc"),
+        @Index(name = "idx_book_id_desc", columnList = "id desc")
+})
 
 public class Book {
     // com isso entendese que no banco de dados tem uma tabela com o nome Book e as colunas
 
     @Id // para mapear pelo id
     @Column //(name = "") quando for usar uma coluna diferente do ID
-    @GeneratedValue(strategy = GenerationType.IDENTITY) // diz que o ID na base de dados é auto incremento, e o banco que vais e encarregar de gerar
+    // sequence com alocacao em blocos: o hibernate reserva 50 ids por ida ao banco e consegue agrupar os inserts em batch
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_seq")
+    @SequenceGenerator(name = "book_seq", sequenceName = "book_seq", allocationSize = 50)
     private Long id;
     @Column
     private String title;
     @Column
     private String author;
+    // sempre o ISBN-13 canonico; gravado como bigint pelo IsbnConverter
     @Column
+    @Convert(converter = IsbnConverter.class)
     private String isbn;
+    // controle de concorrencia otimista; tambem compoe o ETag do livro
+    @Version
+    @Column
+    private Long version;
+    // so filtro da pesquisa (?available=); a disponibilidade vem dos emprestimos, nao e coluna
+    @Transient
+    private Boolean available;
 }
@@ -0,0 +1,66 @@
+package com.projetolivraria.libraryapi.model.entity;
+
+import java.util.Locale;
+
+// regras do ISBN: digito verificador do ISBN-10 (mod 11) e do ISBN-13 (mod 10, pesos 1 e 3)
+// a forma canonica e o ISBN-13 so com digitos, que cabe num long e e o que vai para a coluna isbn
+public final class Isbn {
+
+    private Isbn() {
+    }
+
+    // ISBN-13 canonico, ou null quando o valor nao e um ISBN-10 nem ISBN-13 valido
+    public static String toIsbn13(String value) {
+        if (value == null) {
+            return null;
+        }
+        String digits = compact(value);
+        if (digits.length() == 13 && digits.chars().allMatch(Character::isDigit)
+                && (digits.startsWith("978") || digits.startsWith("979"))
+                && checkDigit13(digits) == digits.charAt(12) - '0') {
+            return digits;
+        }
+        if (digits.length() == 10 && digits.substring(0, 9).chars().allMatch(Character::isDigit)
+                && (Character.isDigit(digits.charAt(9)) || digits.charAt(9) == 'X')
+                && isValid10(digits)) {
+            String isbn13 = "978" + digits.substring(0, 9);
+            return isbn13 + checkDigit13(isbn13);
+        }
+        return null;
+    }
+
+    public static boolean isValid(String value) {
+        return toIsbn13(value) != null;
+    }
+
+    // canonico quando valido; senao so tira hifens e espacos (termo parcial da pesquisa)
+    public static String normalize(String value) {
+        if (value == null) {
+            return null;
+        }
+        String isbn13 = toIsbn13(value);
+        return isbn13 != null ? isbn13 : compact(value);
+    }
+
+    static String compact(String value) {
+        return value.replace("-", "").replace(" ", "").toUpperCase(Locale.ROOT);
+    }
+
+    private static boolean isValid10(String digits) {
+        int sum = 0;
+        for (int i = 0; i < 10; i++) {
+            int digit = digits.charAt(i) == 'X' ? 10 : digits.charAt(i) - '0';
+            sum += (10 - i) * digit;
+        }
+        return sum % 11 == 0;
+    }
+
+    // digito verificador sobre os 12 primeiros digitos
+    private static int checkDigit13(String digits) {
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return (10 - sum % 10) % 10;
+    }
+}
@@ -0,0 +1,31 @@
+package com.projetolivraria.libraryapi.model.entity;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+// isbn na entidade como texto, na base como bigint: chave de largura fixa, indice menor e comparacao numerica
+// o ISBN-13 nunca comeca com zero, entao o long volta exatamente para os mesmos 13 digitos
+@Converter
+public class IsbnConverter implements AttributeConverter<String, Long> {
+
+    @Override
+    public Long convertToDatabaseColumn(String isbn) {
+        if (isbn == null) {
+            return null;
+        }
+        if (!fits(isbn)) {
+            throw new IllegalArgumentException("Isbn invalido: " + isbn);
+        }
+        return Long.valueOf(isbn);
+    }
+
+    // so digitos e dentro do long: pode ser comparado com a coluna
+    public static boolean fits(String isbn) {
+        return isbn != null && !isbn.isEmpty() && isbn.length() <= 18 && isbn.chars().allMatch(Character::isDigit);
+    }
+
+    @Override
+    public String convertToEntityAttribute(Long isbn) {
+        return isbn == null ? null : String.valueOf(isbn);
+    }
+}
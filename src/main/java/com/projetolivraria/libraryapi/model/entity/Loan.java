@@ -3,19 +3,53 @@ package com.projetolivraria.libraryapi.model.entity;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
+import javax.persistence.*;
 import java.time.LocalDate;
 
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
+@Entity
+// indices da pesquisa de emprestimos: cada filtro seguido de "id desc", que e a ordem da listagem
+// criados pelas migracoes do flyway; aqui so documentam o que a base tem
+@Table(indexes = {
+        @Index(name = "idx_loan_book_returned", columnList = "book_id, returned"),
+        @Index(name = "idx_loan_id_desc", columnList = "id desc"),
+        @Index(name = "idx_loan_returned_id_desc", columnList = "returned, id desc"),
+        @Index(name = "idx_loan_customer_id_desc", columnList = "customer, id desc"),
+        @Index(name = "idx_loan_date_id_desc", columnList = "loan_date desc, id desc"),
+        @Index(name = "idx_loan_returned_date_id", columnList = "returned, loan_date, id") // varredura de atrasados
+})
 public class Loan {
 
+    @Id
+    @Column
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "loan_seq")
+    @SequenceGenerator(name = "loan_seq", sequenceName = "loan_seq", allocationSize = 50)
     private Long id;
+
+    @Column(length = 100)
     private String customer;
+
+    @JoinColumn(name = "book_id")
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude // evita carregar o livro (lazy) so para imprimir ou comparar o emprestimo
+    @EqualsAndHashCode.Exclude
     private Book book;
+
+    @Column(name = "loan_date") // nome explicito para o indice idx_loan_date_id
     private LocalDate loanDate;
+
+    @Column
     private Boolean returned;
+
+    // id do livro enquanto o emprestimo esta aberto e nulo depois da devolucao;
+    // a restricao unique garante no banco no maximo um emprestimo aberto por livro
+    @Column(name = "open_book_id", unique = true)
+    private Long openBookId;
 }
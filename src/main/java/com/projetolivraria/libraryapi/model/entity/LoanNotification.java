@@ -0,0 +1,40 @@
+package com.projetolivraria.libraryapi.model.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// outbox de avisos de emprestimo atrasado: o OverdueLoanScanner grava, o OverdueNotificationConsumer entrega e apaga
+// um aviso por emprestimo (a chave e o id do emprestimo)
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "loan_notification")
+public class LoanNotification {
+
+    @Id
+    @Column(name = "loan_id")
+    private Long loanId;
+
+    @Column(length = 100)
+    private String customer;
+
+    @Column(name = "book_id")
+    private Long bookId;
+
+    @Column(name = "loan_date")
+    private LocalDate loanDate;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+}
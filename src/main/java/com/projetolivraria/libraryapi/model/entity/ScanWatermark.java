@@ -0,0 +1,32 @@
+package com.projetolivraria.libraryapi.model.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDate;
+
+// ate onde uma varredura incremental ja chegou, pela chave (loan_date, id) do ultimo emprestimo processado
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "scan_watermark")
+public class ScanWatermark {
+
+    @Id
+    @Column(length = 50)
+    private String name;
+
+    @Column(name = "last_date")
+    private LocalDate lastDate;
+
+    @Column(name = "last_id")
+    private Long lastId;
+}
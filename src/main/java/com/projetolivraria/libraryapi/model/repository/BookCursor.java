@@ -0,0 +1,82 @@
+package com.projetolivraria.libraryapi.model.repository;
+
+import com.projetolivraria.libraryapi.api.exception.BusinessException;
+import com.projetolivraria.libraryapi.model.entity.Book;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+// posicao da paginacao por chave: ultimo valor da ordenacao e ultimo id entregues ao cliente
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class BookCursor {
+
+    public static final List<String> PROPERTIES = BookSort.PROPERTIES;
+
+    private static final String SEPARATOR = "|";
+
+    private final String property;
+    private final Sort.Direction direction;
+    private final Long lastId; // nulo na primeira pagina
+    private final String lastValue;
+
+    public static BookCursor first(Sort sort) {
+        // o token guarda uma coluna e o id: as mesmas regras da pesquisa por pagina, e o id vem sempre depois
+        Sort.Order order = BookSort.check(sort).stream().findFirst().orElse(Sort.Order.asc("id"));
+        return new BookCursor(order.getProperty(), order.getDirection(), null, null);
+    }
+
+    // o token e opaco para o cliente: direcao|propriedade|id|valor em base64
+    public static BookCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 4);
+            if (parts.length != 4 || !PROPERTIES.contains(parts[1])) {
+                throw new IllegalArgumentException(raw);
+            }
+            return new BookCursor(parts[1], Sort.Direction.fromString(parts[0]), Long.valueOf(parts[2]), parts[3]);
+        } catch (IllegalArgumentException e) {
+            throw new BusinessException("Cursor invalido");
+        }
+    }
+
+    public BookCursor next(Book last) {
+        return new BookCursor(property, direction, last.getId(), valueOf(last));
+    }
+
+    public String encode() {
+        String raw = direction.name() + SEPARATOR + property + SEPARATOR + lastId + SEPARATOR + (lastValue == null ? "" : lastValue);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean isFirst() {
+        return lastId == null;
+    }
+
+    public boolean isById() {
+        return "id".equals(property);
+    }
+
+    // isbn tambem e unico: nao ha empate para o id desfazer
+    public boolean isUnique() {
+        return isById() || "isbn".equals(property);
+    }
+
+    private String valueOf(Book book) {
+        switch (property) {
+            case "title":
+                return book.getTitle();
+            case "author":
+                return book.getAuthor();
+            case "isbn":
+                return book.getIsbn();
+            default:
+                return null;
+        }
+    }
+}
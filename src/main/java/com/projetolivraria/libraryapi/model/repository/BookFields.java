@@ -0,0 +1,81 @@
+package com.projetolivraria.libraryapi.model.repository;
+
+import com.projetolivraria.libraryapi.api.exception.BusinessException;
+import com.projetolivraria.libraryapi.model.entity.Book;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// colunas pedidas em ?fields=title,author; so elas sao lidas da base e escritas na resposta
+// id e version sempre vem na consulta porque compoem o ETag
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class BookFields {
+
+    public static final List<String> PROPERTIES = Arrays.asList("id", "title", "author", "isbn");
+
+    // todas as colunas: o livro inteiro lido sem passar pelo contexto de persistencia
+    public static final BookFields ALL = new BookFields(PROPERTIES);
+
+    private final List<String> names;
+
+    public static BookFields parse(String fields) {
+        List<String> names = new ArrayList<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (!PROPERTIES.contains(name)) {
+                throw new BusinessException("Campo nao suportado em fields: " + name);
+            }
+            if (!names.contains(name)) {
+                names.add(name);
+            }
+        }
+        return new BookFields(names);
+    }
+
+    // campos em ordem alfabetica para o ETag: fields=title,isbn e fields=isbn,title tem o mesmo conteudo
+    public String key() {
+        List<String> sorted = new ArrayList<>(names);
+        Collections.sort(sorted);
+        return String.join(",", sorted);
+    }
+
+    // colunas do select: as pedidas mais id e version
+    public List<String> columns() {
+        List<String> columns = new ArrayList<>(names);
+        if (!columns.contains("id")) {
+            columns.add("id");
+        }
+        columns.add("version");
+        return columns;
+    }
+
+    // corpo da resposta na ordem pedida
+    public Map<String, Object> select(Book book) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        names.forEach(name -> values.put(name, valueOf(book, name)));
+        return values;
+    }
+
+    static Object valueOf(Book book, String name) {
+        switch (name) {
+            case "id":
+                return book.getId();
+            case "title":
+                return book.getTitle();
+            case "author":
+                return book.getAuthor();
+            case "isbn":
+                return book.getIsbn();
+            default:
+                return book.getVersion();
+        }
+    }
+}
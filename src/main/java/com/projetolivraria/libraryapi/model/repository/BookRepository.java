@@ -1,8 +1,47 @@
 package com.projetolivraria.libraryapi.model.repository;
 
 import com.projetolivraria.libraryapi.model.entity.Book;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
-public interface BookRepository extends JpaRepository<Book, Long> {
+import javax.persistence.QueryHint;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+public interface BookRepository extends JpaRepository<Book, Long>, BookRepositoryCustom {
     boolean existsByIsbn(String isbn); //primeiro é a entidade e o outro é o tipo da chave primaria
+
+    Optional<Book> findByIsbn(String isbn);
+
+    @Query("select b.isbn from Book b where b.isbn in :isbns")
+    List<String> findExistingIsbns(@Param("isbns") Collection<String> isbns);
+
+    // um unico DELETE, sem carregar o livro antes; devolve as linhas apagadas
+    @Transactional
+    @Modifying
+    @Query("delete from Book b where b.id = :id")
+    int deleteDirectlyById(@Param("id") Long id);
+
+    // emprestimo aberto do livro pela coluna unique open_book_id; so enquanto o bitmap de disponibilidade carrega
+    @Query("select case when count(l) > 0 then true else false end from Loan l where l.openBookId = :id")
+    boolean hasOpenLoan(@Param("id") Long id);
+
+    Slice<Book> findByIdGreaterThan(Long id, Pageable pageable);
+
+    // cursor somente para frente; precisa de transacao aberta enquanto o stream e consumido
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "1000"), @QueryHint(name = HINT_READONLY, value = "true")})
+    @Query("select b from Book b order by b.id")
+    Stream<Book> streamAll();
 }
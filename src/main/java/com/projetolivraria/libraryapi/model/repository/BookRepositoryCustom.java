@@ -0,0 +1,34 @@
+package com.projetolivraria.libraryapi.model.repository;
+
+import com.projetolivraria.libraryapi.model.entity.Book;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface BookRepositoryCustom {
+
+    // proxima pagina a partir do cursor, sem OFFSET e sem count
+    List<Book> findAfter(Book filter, BookCursor cursor, int limit);
+
+    // pagina por offset sem count: devolve ate pageSize + 1 linhas, a ultima so indica que existe proxima
+    List<Book> findSlice(Book filter, Pageable pageable);
+
+    // findSlice lendo so as colunas pedidas; os livros voltam fora do contexto de persistencia
+    List<Book> findFields(Book filter, Pageable pageable, BookFields fields);
+
+    List<Book> findFieldsById(Collection<Long> ids, BookFields fields);
+
+    // total do mesmo criterio do findSlice
+    long countMatching(Book filter);
+
+    // um unico UPDATE das colunas nao nulas de changes (titulo e autor) e da versao;
+    // com expectedVersion so atualiza se o livro ainda estiver nela; devolve as linhas alteradas
+    int updateFields(Book changes, Long expectedVersion);
+
+    // insere em lotes do tamanho do hibernate.jdbc.batch_size, limpando o contexto a cada lote
+    List<Book> insertAll(List<Book> books);
+
+    // tira o livro do contexto de persistencia, usado ao percorrer o streamAll
+    void detach(Book book);
+}
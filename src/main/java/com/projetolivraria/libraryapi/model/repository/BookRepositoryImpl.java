@@ -0,0 +1,260 @@
+package com.projetolivraria.libraryapi.model.repository;
+
+import com.projetolivraria.libraryapi.model.entity.Book;
+import com.projetolivraria.libraryapi.model.entity.Isbn;
+import com.projetolivraria.libraryapi.model.entity.Loan;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.query.EscapeCharacter;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.AbstractQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import javax.persistence.criteria.Subquery;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+// implementacao das consultas que o Spring Data nao deriva sozinho
+public class BookRepositoryImpl implements BookRepositoryCustom {
+
+    private static final EscapeCharacter ESCAPE = EscapeCharacter.DEFAULT;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+    private int batchSize;
+
+    @Override
+    public List<Book> findAfter(Book filter, BookCursor cursor, int limit) {
+        if (cursor.isFirst() || cursor.isUnique()) {
+            return findAfter(filter, cursor, null, limit);
+        }
+        // (valor, id) depois do ultimo entregue em dois passos, cada um uma faixa do indice (coluna, id):
+        // primeiro o resto do mesmo valor, depois os valores seguintes; um "or" obrigaria a base a percorrer o indice todo
+        List<Book> books = new ArrayList<>(findAfter(filter, cursor, true, limit));
+        if (books.size() < limit) {
+            books.addAll(findAfter(filter, cursor, false, limit - books.size()));
+        }
+        return books;
+    }
+
+    private List<Book> findAfter(Book filter, BookCursor cursor, Boolean sameValue, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Book> query = cb.createQuery(Book.class);
+        Root<Book> root = query.from(Book.class);
+
+        List<Predicate> predicates = containing(cb, query, root, filter);
+        boolean asc = cursor.getDirection() == Sort.Direction.ASC;
+        Path<Long> id = root.get("id");
+        if (sameValue == null && !cursor.isFirst()) {
+            if (cursor.isById()) {
+                predicates.add(asc ? cb.greaterThan(id, cursor.getLastId()) : cb.lessThan(id, cursor.getLastId()));
+            } else {
+                Path<String> value = root.get(cursor.getProperty());
+                predicates.add(asc ? cb.greaterThan(value, cursor.getLastValue()) : cb.lessThan(value, cursor.getLastValue()));
+            }
+        } else if (sameValue != null) {
+            Path<String> value = root.get(cursor.getProperty());
+            if (sameValue) {
+                predicates.add(cb.equal(value, cursor.getLastValue()));
+                predicates.add(asc ? cb.greaterThan(id, cursor.getLastId()) : cb.lessThan(id, cursor.getLastId()));
+            } else {
+                predicates.add(asc ? cb.greaterThan(value, cursor.getLastValue()) : cb.lessThan(value, cursor.getLastValue()));
+            }
+        }
+
+        List<Order> orders = new ArrayList<>();
+        if (!cursor.isById()) {
+            orders.add(asc ? cb.asc(root.get(cursor.getProperty())) : cb.desc(root.get(cursor.getProperty())));
+        }
+        if (cursor.isById() || !cursor.isUnique()) {
+            // com isbn o id na ordem tiraria o unique do isbn da disputa e a base ordenaria tudo
+            orders.add(asc ? cb.asc(id) : cb.desc(id));
+        }
+
+        query.select(root).where(predicates.toArray(new Predicate[0])).orderBy(orders);
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+
+    @Override
+    public List<Book> findSlice(Book filter, Pageable pageable) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Book> query = cb.createQuery(Book.class);
+        Root<Book> root = query.from(Book.class);
+        query.select(root)
+                .where(containing(cb, query, root, filter).toArray(new Predicate[0]))
+                .orderBy(QueryUtils.toOrders(pageable.getSort(), root, cb));
+
+        TypedQuery<Book> typed = entityManager.createQuery(query);
+        if (pageable.isPaged()) {
+            typed.setFirstResult((int) pageable.getOffset()).setMaxResults(pageable.getPageSize() + 1);
+        }
+        return typed.getResultList();
+    }
+
+    @Override
+    public List<Book> findFields(Book filter, Pageable pageable, BookFields fields) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Book> root = query.from(Book.class);
+        query.multiselect(selections(root, fields))
+                .where(containing(cb, query, root, filter).toArray(new Predicate[0]))
+                .orderBy(QueryUtils.toOrders(pageable.getSort(), root, cb));
+
+        TypedQuery<Tuple> typed = entityManager.createQuery(query);
+        if (pageable.isPaged()) {
+            typed.setFirstResult((int) pageable.getOffset()).setMaxResults(pageable.getPageSize() + 1);
+        }
+        return books(typed.getResultList(), fields);
+    }
+
+    @Override
+    public List<Book> findFieldsById(Collection<Long> ids, BookFields fields) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Book> root = query.from(Book.class);
+        query.multiselect(selections(root, fields)).where(root.get("id").in(ids));
+        return books(entityManager.createQuery(query).getResultList(), fields);
+    }
+
+    @Override
+    public long countMatching(Book filter) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<Book> root = query.from(Book.class);
+        query.select(cb.count(root)).where(containing(cb, query, root, filter).toArray(new Predicate[0]));
+        return entityManager.createQuery(query).getSingleResult();
+    }
+
+    @Override
+    @Transactional
+    public int updateFields(Book changes, Long expectedVersion) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Book> update = cb.createCriteriaUpdate(Book.class);
+        Root<Book> root = update.from(Book.class);
+        if (changes.getTitle() != null) {
+            update.set(root.<String>get("title"), changes.getTitle());
+        }
+        if (changes.getAuthor() != null) {
+            update.set(root.<String>get("author"), changes.getAuthor());
+        }
+        Path<Long> version = root.get("version");
+        update.set(version, cb.sum(version, 1l));
+
+        Predicate byId = cb.equal(root.get("id"), changes.getId());
+        update.where(expectedVersion == null ? byId : cb.and(byId, cb.equal(version, expectedVersion)));
+        return entityManager.createQuery(update).executeUpdate();
+    }
+
+    @Override
+    @Transactional
+    public List<Book> insertAll(List<Book> books) {
+        for (int i = 0; i < books.size(); i++) {
+            entityManager.persist(books.get(i));
+            if ((i + 1) % batchSize == 0) {
+                // envia o lote e solta as entidades para a memoria nao crescer com o tamanho da carga
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+        return books;
+    }
+
+    @Override
+    public void detach(Book book) {
+        entityManager.detach(book);
+    }
+
+    private static List<Selection<?>> selections(Root<Book> root, BookFields fields) {
+        List<Selection<?>> selections = new ArrayList<>();
+        fields.columns().forEach(column -> selections.add(root.get(column).alias(column)));
+        return selections;
+    }
+
+    // monta livros soltos, so com as colunas lidas; nada de proxy nem dirty checking
+    private static List<Book> books(List<Tuple> rows, BookFields fields) {
+        List<Book> books = new ArrayList<>(rows.size());
+        List<String> columns = fields.columns();
+        for (Tuple row : rows) {
+            Book.BookBuilder book = Book.builder();
+            for (String column : columns) {
+                Object value = row.get(column);
+                switch (column) {
+                    case "id":
+                        book.id((Long) value);
+                        break;
+                    case "title":
+                        book.title((String) value);
+                        break;
+                    case "author":
+                        book.author((String) value);
+                        break;
+                    case "isbn":
+                        book.isbn((String) value);
+                        break;
+                    default:
+                        book.version((Long) value);
+                }
+            }
+            books.add(book.build());
+        }
+        return books;
+    }
+
+    // criterio da pesquisa de livros (BookService.find, findSlice, findAfter): contem, ignorando caixa
+    static List<Predicate> containing(CriteriaBuilder cb, AbstractQuery<?> query, Root<Book> root, Book filter) {
+        List<Predicate> predicates = new ArrayList<>();
+        like(cb, root.get("title"), filter.getTitle(), predicates);
+        like(cb, root.get("author"), filter.getAuthor(), predicates);
+        isbn(cb, root, filter.getIsbn(), predicates);
+        if (filter.getId() != null) {
+            predicates.add(cb.equal(root.get("id"), filter.getId()));
+        }
+        if (filter.getAvailable() != null) {
+            // so quando o bitmap de disponibilidade nao responde: exists pela coluna unique open_book_id
+            Subquery<Long> open = query.subquery(Long.class);
+            Root<Loan> loan = open.from(Loan.class);
+            open.select(loan.get("openBookId")).where(cb.equal(loan.get("openBookId"), root.get("id")));
+            predicates.add(filter.getAvailable() ? cb.not(cb.exists(open)) : cb.exists(open));
+        }
+        return predicates;
+    }
+
+    // isbn completo vai pela igualdade no indice unique; parte dele, pelo texto da coluna numerica
+    private static void isbn(CriteriaBuilder cb, Root<Book> root, String value, List<Predicate> predicates) {
+        if (value == null) {
+            return;
+        }
+        if (Isbn.isValid(value)) {
+            predicates.add(cb.equal(root.get("isbn"), Isbn.toIsbn13(value)));
+        } else {
+            like(cb, cb.function("str", String.class, root.get("isbn")), value, predicates);
+        }
+    }
+
+    private static void like(CriteriaBuilder cb, Expression<String> field, String value, List<Predicate> predicates) {
+        if (value != null) {
+            String pattern = "%" + ESCAPE.escape(value.toLowerCase(Locale.ROOT)) + "%";
+            predicates.add(cb.like(cb.lower(field), pattern, ESCAPE.getEscapeCharacter()));
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.projetolivraria.libraryapi.model.repository;
+
+import com.projetolivraria.libraryapi.api.exception.BusinessException;
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// ordenacoes aceitas na pesquisa de livros: so colunas com indice (chave primaria, unique de isbn e V2__book_sort_indexes)
+// qualquer outra obrigaria a base a ler e ordenar a tabela inteira a cada pagina
+public final class BookSort {
+
+    public static final List<String> PROPERTIES = Arrays.asList("id", "title", "author", "isbn");
+
+    private BookSort() {
+    }
+
+    // uma coluna, opcionalmente seguida de id na mesma direcao: e o que os indices (coluna, id) atendem
+    public static Sort check(Sort sort) {
+        List<Sort.Order> orders = new ArrayList<>();
+        sort.forEach(orders::add);
+        for (Sort.Order order : orders) {
+            if (!PROPERTIES.contains(order.getProperty())) {
+                throw new BusinessException("Ordenacao nao suportada: " + order.getProperty());
+            }
+            if (order.isIgnoreCase()) {
+                throw new BusinessException("Ordenacao ignorando caixa nao suportada: " + order.getProperty());
+            }
+        }
+        if (orders.size() > 2 || (orders.size() == 2 && (!"id".equals(orders.get(1).getProperty())
+                || "id".equals(orders.get(0).getProperty())
+                || orders.get(0).getDirection() != orders.get(1).getDirection()))) {
+            throw new BusinessException("Ordenacao por mais de uma coluna nao suportada: " + sort);
+        }
+        return sort;
+    }
+}
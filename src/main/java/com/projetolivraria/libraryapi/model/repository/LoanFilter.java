@@ -0,0 +1,18 @@
+package com.projetolivraria.libraryapi.model.repository;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.LocalDate;
+
+// filtros da pesquisa de emprestimos; os nulos sao ignorados
+@Getter
+@Builder
+public class LoanFilter {
+
+    private final String isbn; // isbn exato do livro
+    private final String customer; // prefixo do nome do cliente
+    private final LocalDate from; // data do emprestimo, inclusive
+    private final LocalDate to;
+    private final Boolean returned;
+}
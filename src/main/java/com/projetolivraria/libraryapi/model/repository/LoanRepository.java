@@ -0,0 +1,10 @@
+package com.projetolivraria.libraryapi.model.repository;
+
+import com.projetolivraria.libraryapi.model.entity.Loan;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface LoanRepository extends JpaRepository<Loan, Long>, LoanRepositoryCustom {
+
+    // consulta pela coluna unique open_book_id, sem join com book
+    boolean existsByOpenBookId(Long bookId);
+}
@@ -0,0 +1,17 @@
+package com.projetolivraria.libraryapi.model.repository;
+
+import com.projetolivraria.libraryapi.model.entity.Loan;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface LoanRepositoryCustom {
+
+    // emprestimos do mais novo para o mais antigo (id decrescente) ja com o livro carregado;
+    // afterId (cursor) e offset sao opcionais, sem count
+    List<Loan> search(LoanFilter filter, Long afterId, long offset, int limit);
+
+    // devolve o emprestimo e libera o open_book_id para o livro poder ser emprestado de novo;
+    // o livro do emprestimo, ou vazio quando ja devolvido ou inexistente
+    Optional<Long> markReturned(Long id);
+}
@@ -0,0 +1,186 @@
+package com.projetolivraria.libraryapi.model.repository;
+
+import com.projetolivraria.libraryapi.model.entity.Book;
+import com.projetolivraria.libraryapi.model.entity.IsbnConverter;
+import com.projetolivraria.libraryapi.model.entity.Loan;
+import org.hibernate.Session;
+import org.springframework.data.jpa.repository.query.EscapeCharacter;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+// a ordem da pagina segue o indice do filtro (ver Loan), para o "limit" parar na pagina sem ordenar o resultado:
+// prefixo do cliente -> customer, id desc; faixa de datas -> loan_date desc, id desc;
+// returned -> returned, id desc (returned e constante no filtro, a ordem e a do id); sem filtro -> id desc
+// o indice e percorrido no sentido em que foi criado, por isso os indices da pesquisa sao "id desc"
+public class LoanRepositoryImpl implements LoanRepositoryCustom {
+
+    static final String MARK_RETURNED = "update loan set returned = true, open_book_id = null where id = ? and returned = false";
+    static final String BOOK_OF_LOAN = "select book_id from loan where id = ?";
+
+    private static final EscapeCharacter ESCAPE = EscapeCharacter.DEFAULT;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // um unico UPDATE condicional, sem carregar o emprestimo nem o livro; o livro volta como chave gerada pedida
+    // pela coluna book_id (o "update ... returning" pelo JDBC), sem outro SELECT
+    @Override
+    @Transactional
+    public Optional<Long> markReturned(Long id) {
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> markReturned(connection, id));
+    }
+
+    static Optional<Long> markReturned(Connection connection, Long id) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(MARK_RETURNED, new String[]{"book_id"})) {
+            statement.setLong(1, id);
+            if (statement.executeUpdate() == 0) {
+                return Optional.empty();
+            }
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                if (keys.next()) {
+                    return Optional.of(keys.getLong(1));
+                }
+            }
+        }
+        // devolver uma coluna que nao e chave pelo getGeneratedKeys e coisa do H2; sem ela o emprestimo ja foi devolvido
+        // nesta transacao e o livro sai da propria linha, nunca um "ja devolvido"
+        try (PreparedStatement statement = connection.prepareStatement(BOOK_OF_LOAN)) {
+            statement.setLong(1, id);
+            try (ResultSet rows = statement.executeQuery()) {
+                if (rows.next()) {
+                    long bookId = rows.getLong(1);
+                    if (!rows.wasNull()) {
+                        return Optional.of(bookId);
+                    }
+                }
+            }
+        }
+        throw new IllegalStateException("Emprestimo " + id + " devolvido sem livro");
+    }
+
+    @Override
+    public List<Loan> search(LoanFilter filter, Long afterId, long offset, int limit) {
+        String key = orderKey(filter);
+        if (afterId == null || key == null || "returned".equals(key)) {
+            return search(filter, key, afterId, null, null, offset, limit);
+        }
+        // o cursor continua sendo so o id do ultimo emprestimo: o valor da coluna da ordem vem da linha dele, pela chave primaria
+        List<?> values = entityManager.createQuery("select l." + key + " from Loan l where l.id = :id")
+                .setParameter("id", afterId)
+                .getResultList();
+        if (values.isEmpty() || values.get(0) == null) {
+            return Collections.emptyList(); // cursor de um emprestimo que nao existe
+        }
+        // (valor, id) depois do cursor em dois passos, cada um uma faixa do indice (coluna, id desc):
+        // primeiro o resto do mesmo valor, depois os valores seguintes; um "or" nao vira faixa e relia o indice desde o inicio
+        Object value = values.get(0);
+        List<Loan> loans = new ArrayList<>(search(filter, key, afterId, value, true, offset, limit));
+        if (loans.size() < limit) {
+            loans.addAll(search(filter, key, afterId, value, false, 0, limit - loans.size()));
+        }
+        return loans;
+    }
+
+    // sameValue nulo: pagina pelo id (ou sem cursor); verdadeiro: mesmo valor e id menor; falso: valores depois do cursor
+    @SuppressWarnings("unchecked")
+    private <T extends Comparable<? super T>> List<Loan> search(LoanFilter filter, String key, Long afterId, Object value,
+                                                                Boolean sameValue, long offset, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Loan> query = cb.createQuery(Loan.class);
+        Root<Loan> root = query.from(Loan.class);
+        // o livro vem no mesmo select (join fetch), nada de uma consulta por emprestimo
+        // com isbn o livro comeca o join (indice de isbn); sem ele o left join deixa o emprestimo na frente,
+        // senao o H2 comeca pela tabela menor (book) e ordena os emprestimos no fim
+        JoinType joinType = filter.getIsbn() != null ? JoinType.INNER : JoinType.LEFT;
+        Join<Loan, Book> book = (Join<Loan, Book>) root.<Loan, Book>fetch("book", joinType);
+        Path<Long> id = root.get("id");
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (filter.getIsbn() != null) {
+            // isbn que nao cabe na coluna numerica nao e de nenhum livro
+            predicates.add(IsbnConverter.fits(filter.getIsbn()) ? cb.equal(book.get("isbn"), filter.getIsbn()) : cb.disjunction());
+        }
+        if (filter.getCustomer() != null) {
+            // prefixo sem lower(): continua usando o indice (customer, id)
+            predicates.add(cb.like(root.get("customer"), ESCAPE.escape(filter.getCustomer()) + "%", ESCAPE.getEscapeCharacter()));
+        }
+        // com cursor por data, a faixa do filtro e a do cursor viram um limite so: com dois o H2 pode seguir o mais largo
+        boolean byDate = sameValue != null && "loanDate".equals(key);
+        if (filter.getFrom() != null && !(byDate && sameValue)) {
+            predicates.add(cb.greaterThanOrEqualTo(root.<LocalDate>get("loanDate"), filter.getFrom()));
+        }
+        if (filter.getTo() != null && !byDate) {
+            predicates.add(cb.lessThanOrEqualTo(root.<LocalDate>get("loanDate"), filter.getTo()));
+        }
+        if (filter.getReturned() != null) {
+            predicates.add(cb.equal(root.get("returned"), filter.getReturned()));
+        }
+        if (sameValue == null) {
+            if (afterId != null) {
+                predicates.add(cb.lessThan(id, afterId));
+            }
+        } else if (sameValue) {
+            if (byDate && !within(filter, (LocalDate) value)) {
+                return Collections.emptyList();
+            }
+            predicates.add(cb.equal(root.get(key), value));
+            predicates.add(cb.lessThan(id, afterId));
+        } else if (byDate) {
+            LocalDate date = (LocalDate) value;
+            predicates.add(filter.getTo() != null && filter.getTo().isBefore(date)
+                    ? cb.lessThanOrEqualTo(root.<LocalDate>get(key), filter.getTo())
+                    : cb.lessThan(root.<LocalDate>get(key), date));
+        } else {
+            predicates.add(cb.greaterThan(root.<T>get(key), (T) value));
+        }
+
+        List<Order> orders = new ArrayList<>();
+        if (key != null) {
+            orders.add("loanDate".equals(key) ? cb.desc(root.get(key)) : cb.asc(root.get(key)));
+        }
+        orders.add(cb.desc(id));
+        query.select(root).where(predicates.toArray(new Predicate[0])).orderBy(orders);
+        return entityManager.createQuery(query)
+                .setFirstResult((int) offset)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    private static boolean within(LoanFilter filter, LocalDate date) {
+        return (filter.getFrom() == null || !date.isBefore(filter.getFrom()))
+                && (filter.getTo() == null || !date.isAfter(filter.getTo()));
+    }
+
+    // coluna que vem antes do id na ordem da pagina, ou nulo quando a ordem e so pelo id
+    private static String orderKey(LoanFilter filter) {
+        if (filter.getCustomer() != null) {
+            return "customer";
+        }
+        if (filter.getFrom() != null || filter.getTo() != null) {
+            return "loanDate";
+        }
+        if (filter.getReturned() != null) {
+            return "returned";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,74 @@
+package com.projetolivraria.libraryapi.model.repository;
+
+import com.projetolivraria.libraryapi.model.entity.Book;
+import io.r2dbc.spi.Row;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.jpa.repository.query.EscapeCharacter;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// leitura do catalogo pelo driver R2DBC, sem prender thread enquanto espera o banco
+@Repository
+@ConditionalOnProperty(prefix = "library.reactive", name = "enabled", havingValue = "true")
+public class ReactiveBookRepository {
+
+    static final String COLUMNS = "select id, title, author, isbn, version from book";
+
+    private final DatabaseClient client;
+
+    public ReactiveBookRepository(DatabaseClient client) {
+        this.client = client;
+    }
+
+    public Mono<Book> findById(Long id) {
+        return client.sql(COLUMNS + " where id = :id")
+                .bind("id", id)
+                .map(ReactiveBookRepository::book)
+                .one();
+    }
+
+    // mesmo "contem, ignorando caixa" da pesquisa do BookController, em ordem de id a partir de afterId
+    public Flux<Book> findAll(Book filter, long afterId, int limit) {
+        Map<String, String> likes = new LinkedHashMap<>();
+        putLike(likes, "title", filter.getTitle());
+        putLike(likes, "author", filter.getAuthor());
+        putLike(likes, "isbn", filter.getIsbn());
+
+        StringBuilder sql = new StringBuilder(COLUMNS).append(" where id > :afterId");
+        // isbn e bigint na base: compara pelo texto dele
+        likes.keySet().forEach(column -> sql.append(" and lower(").append("isbn".equals(column) ? "cast(isbn as varchar)" : column)
+                .append(") like :").append(column).append(" escape '\\'"));
+        sql.append(" order by id limit :limit");
+
+        DatabaseClient.GenericExecuteSpec spec = client.sql(sql.toString())
+                .bind("afterId", afterId)
+                .bind("limit", limit);
+        for (Map.Entry<String, String> like : likes.entrySet()) {
+            spec = spec.bind(like.getKey(), like.getValue());
+        }
+        return spec.map(ReactiveBookRepository::book).all();
+    }
+
+    private static void putLike(Map<String, String> likes, String column, String value) {
+        if (value != null) {
+            likes.put(column, "%" + EscapeCharacter.DEFAULT.escape(value.toLowerCase(Locale.ROOT)) + "%");
+        }
+    }
+
+    private static Book book(Row row) {
+        Long isbn = row.get("isbn", Long.class);
+        return Book.builder()
+                .id(row.get("id", Long.class))
+                .title(row.get("title", String.class))
+                .author(row.get("author", String.class))
+                .isbn(isbn == null ? null : String.valueOf(isbn))
+                .version(row.get("version", Long.class))
+                .build();
+    }
+}
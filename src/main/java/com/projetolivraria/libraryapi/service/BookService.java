@@ -1,21 +1,55 @@
 package com.projetolivraria.libraryapi.service;
 
 import com.projetolivraria.libraryapi.model.entity.Book;
+import com.projetolivraria.libraryapi.model.repository.BookCursor;
+import com.projetolivraria.libraryapi.model.repository.BookFields;
+import com.projetolivraria.libraryapi.service.index.SuggestIndex;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface BookService {
     Book save(Book any);
 
+    List<Book> saveAll(List<Book> books);
+
     Optional<Book> getById(Long id);
 
+    // livro sem emprestimo aberto, pelo bitmap em memoria
+    boolean isAvailable(Long id);
+
+    // leitura somente das colunas pedidas; o livro devolvido nao deve ser usado para update
+    Optional<Book> getById(Long id, BookFields fields);
+
     void delete(Book book);
 
     Book update(Book book);
 
+    // PATCH: um UPDATE so das colunas informadas, sem ler o livro antes; devolve a linha relida depois do UPDATE
+    // (vazio = nao existe ou versao mudou)
+    Optional<Book> patch(Book changes, Long expectedVersion);
+
+    // DELETE direto pelo id, sem ler o livro; falso quando nao existe
+    boolean deleteById(Long id);
+
     Page<Book> find(Book filter, Pageable pageRequest);
 
+    Page<Book> find(Book filter, Pageable pageRequest, BookFields fields);
+
+    Slice<Book> findSlice(Book filter, Pageable pageRequest);
+
+    Slice<Book> findSlice(Book filter, Pageable pageRequest, BookFields fields);
+
+    Slice<Book> findAfter(Book filter, BookCursor cursor, int size);
+
     Optional<Book> getBookByIsbn(String isbn);
+
+    // titulos e autores que comecam com o prefixo (ou com uma palavra que comeca com ele), pelo indice em memoria
+    List<SuggestIndex.Suggestion> suggest(String prefix, int limit);
+
+    void export(Consumer<Book> consumer);
 }
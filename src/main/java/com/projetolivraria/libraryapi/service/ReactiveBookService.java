@@ -0,0 +1,15 @@
+package com.projetolivraria.libraryapi.service;
+
+import com.projetolivraria.libraryapi.model.entity.Book;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveBookService {
+
+    // livros por pedido da pesquisa: o r2dbc-h2 bloqueia a thread que consome, entao nada de catalogo inteiro num pedido so
+    int MAX_LIMIT = 1000;
+
+    Mono<Book> getById(Long id);
+
+    Flux<Book> find(Book filter, long afterId, int limit);
+}
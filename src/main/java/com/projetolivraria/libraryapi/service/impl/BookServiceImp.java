@@ -1,69 +1,458 @@
 package com.projetolivraria.libraryapi.service.impl;
 
+import com.projetolivraria.libraryapi.api.exception.BatchException;
 import com.projetolivraria.libraryapi.api.exception.BusinessException;
 import com.projetolivraria.libraryapi.model.entity.Book;
+import com.projetolivraria.libraryapi.model.entity.Isbn;
+import com.projetolivraria.libraryapi.model.entity.IsbnConverter;
+import com.projetolivraria.libraryapi.model.repository.BookCursor;
+import com.projetolivraria.libraryapi.model.repository.BookFields;
 import com.projetolivraria.libraryapi.model.repository.BookRepository;
 import com.projetolivraria.libraryapi.service.BookService;
-import org.springframework.data.domain.Example;
-import org.springframework.data.domain.ExampleMatcher;
+import com.projetolivraria.libraryapi.service.index.AvailabilityIndex;
+import com.projetolivraria.libraryapi.service.index.BookCache;
+import com.projetolivraria.libraryapi.service.index.BookCountCache;
+import com.projetolivraria.libraryapi.service.index.IsbnBloomFilter;
+import com.projetolivraria.libraryapi.service.index.IsbnIndex;
+import com.projetolivraria.libraryapi.service.index.SuggestIndex;
+import com.projetolivraria.libraryapi.service.index.TrigramIndex;
+import io.micrometer.core.annotation.Timed;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class BookServiceImp implements BookService {
+    // latencia por metodo: library.book.service{method=...}
+    static final String TIMER = "library.book.service";
+    // limite de parametros do "in" por consulta de isbns existentes
+    static final int ISBN_CHECK_CHUNK = 1000;
+    static final String BOOK_WITH_LOANS = "Livro com emprestimos";
+    // unique de isbn (V1__baseline_schema.sql)
+    static final String ISBN_UNIQUE = "idx_book_isbn";
+
     private BookRepository repository;
+    private IsbnIndex isbnIndex;
+    private TrigramIndex trigramIndex;
+    private BookCache cache;
+    private BookCountCache countCache;
+    private AvailabilityIndex availability;
+    private IsbnBloomFilter isbnFilter;
+    private SuggestIndex suggestIndex;
 
-    public BookServiceImp(BookRepository repository) {
+    public BookServiceImp(BookRepository repository, IsbnIndex isbnIndex, TrigramIndex trigramIndex, BookCache cache,
+                          BookCountCache countCache, AvailabilityIndex availability, IsbnBloomFilter isbnFilter,
+                          SuggestIndex suggestIndex) {
         this.repository = repository;
+        this.isbnIndex = isbnIndex;
+        this.trigramIndex = trigramIndex;
+        this.cache = cache;
+        this.countCache = countCache;
+        this.availability = availability;
+        this.isbnFilter = isbnFilter;
+        this.suggestIndex = suggestIndex;
     }
 
     @Override
+    @Timed(value = TIMER, histogram = true)
     public Book save(Book book) {
-        if (repository.existsByIsbn(book.getIsbn())) {
+        if (mightExist(book.getIsbn()) && repository.existsByIsbn(book.getIsbn())) {
+            throw new BusinessException("Isnb ja cadastrado");
+        }
+        Book saved;
+        try {
+            saved = repository.save(book);
+        } catch (DataIntegrityViolationException e) {
+            if (!isIsbnViolation(e)) {
+                throw e;
+            }
+            // outro cadastro do mesmo isbn passou junto pelo filtro; a unique de isbn recusou
             throw new BusinessException("Isnb ja cadastrado");
         }
-        return repository.save(book);
+        countCache.invalidate();
+        indexed(saved);
+        return saved;
+    }
+
+    @Override
+    @Timed(value = TIMER, histogram = true)
+    public List<Book> saveAll(List<Book> books) {
+        // so consulta os isbns que o filtro de Bloom nao descarta; em carga de livros novos quase nenhum
+        List<String> errors = errors(books, existingIsbns(books, this::mightExist));
+        if (!errors.isEmpty()) {
+            throw new BatchException(errors);
+        }
+
+        List<Book> saved;
+        try {
+            saved = repository.insertAll(books);
+        } catch (DataIntegrityViolationException e) {
+            if (!isIsbnViolation(e)) {
+                throw e;
+            }
+            // outro cadastro entrou entre a consulta e o insert; o lote voltou inteiro, entao consulta de novo
+            // todos os isbns, sem o filtro, para apontar os itens
+            errors = errors(books, existingIsbns(books, isbn -> true));
+            throw errors.isEmpty() ? new BusinessException("Isnb ja cadastrado") : new BatchException(errors);
+        }
+        countCache.invalidate();
+        saved.forEach(this::indexed);
+        return saved;
+    }
+
+    private Set<String> existingIsbns(List<Book> books, Predicate<String> check) {
+        List<String> isbns = new ArrayList<>();
+        books.stream().map(Book::getIsbn).filter(check).forEach(isbns::add);
+        Set<String> existing = new HashSet<>();
+        for (int from = 0; from < isbns.size(); from += ISBN_CHECK_CHUNK) {
+            existing.addAll(repository.findExistingIsbns(isbns.subList(from, Math.min(from + ISBN_CHECK_CHUNK, isbns.size()))));
+        }
+        return existing;
+    }
+
+    private static List<String> errors(List<Book> books, Set<String> existing) {
+        List<String> errors = new ArrayList<>();
+        Map<String, Integer> seen = new HashMap<>();
+        for (int i = 0; i < books.size(); i++) {
+            String isbn = books.get(i).getIsbn();
+            Integer first = seen.putIfAbsent(isbn, i);
+            if (existing.contains(isbn)) {
+                errors.add("[" + i + "] isbn: Isnb ja cadastrado");
+            } else if (first != null) {
+                errors.add("[" + i + "] isbn: repetido no lote, igual ao item " + first);
+            }
+        }
+        return errors;
+    }
+
+    // so a unique de isbn vira "ja cadastrado"; as outras restricoes seguem como erro
+    static boolean isIsbnViolation(DataIntegrityViolationException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            String name = cause instanceof ConstraintViolationException
+                    ? ((ConstraintViolationException) cause).getConstraintName()
+                    : cause.getMessage();
+            if (name != null && name.toLowerCase(Locale.ROOT).contains(ISBN_UNIQUE)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
+    @Timed(value = TIMER, histogram = true)
     public Optional<Book> getById(Long id) {
-        return this.repository.findById(id);
+        return cache.get(id, this.repository::findById);
+    }
+
+    @Override
+    @Timed(value = TIMER, histogram = true)
+    public Optional<Book> getById(Long id, BookFields fields) {
+        // no cache o livro ja esta inteiro; fora dele le so as colunas pedidas, sem guardar no cache
+        Optional<Book> cached = cache.peek(id);
+        if (cached.isPresent()) {
+            return cached;
+        }
+        return repository.findFieldsById(Collections.singletonList(id), fields).stream().findFirst();
     }
 
     @Override
+    @Timed(value = TIMER, histogram = true)
+    public boolean isAvailable(Long id) {
+        if (availability.isReady()) {
+            return !availability.isLoaned(id);
+        }
+        return !repository.hasOpenLoan(id); // bitmap ainda carregando
+    }
+
+    @Override
+    @Timed(value = TIMER, histogram = true)
     public void delete(Book book) {
         if (book == null || book.getId() == null) {
             throw new IllegalArgumentException("Book id cant be null");
         }
-        this.repository.delete(book);
+        try {
+            this.repository.delete(book);
+        } catch (DataIntegrityViolationException e) {
+            throw new BusinessException(BOOK_WITH_LOANS);
+        }
+        cache.evict(book.getId());
+        countCache.invalidate();
+        unindexed(book);
     }
 
     @Override
+    @Timed(value = TIMER, histogram = true)
     public Book update(Book book) {
         if (book == null || book.getId() == null) {
             throw new IllegalArgumentException("Book id cant be null");
         }
-        return this.repository.save(book);
+        Book updated;
+        try {
+            updated = this.repository.save(book);
+        } catch (OptimisticLockingFailureException e) {
+            cache.evict(book.getId()); // a copia do cache pode ser a versao desatualizada
+            throw e;
+        }
+        cache.evict(updated.getId());
+        countCache.invalidate(); // titulo e autor mudam quais filtros o livro atende
+        indexed(updated);
+        return updated;
+    }
+
+    @Override
+    @Timed(value = TIMER, histogram = true)
+    @Transactional
+    public Optional<Book> patch(Book changes, Long expectedVersion) {
+        if (changes == null || changes.getId() == null) {
+            throw new IllegalArgumentException("Book id cant be null");
+        }
+        if (changes.getTitle() == null && changes.getAuthor() == null) {
+            throw new BusinessException("Nenhum campo para atualizar");
+        }
+        if (repository.updateFields(changes, expectedVersion) == 0) {
+            return Optional.empty();
+        }
+        // relido na mesma transacao: a linha continua travada pelo UPDATE, entao versao, titulo e autor sao os desta escrita
+        // e nao uma copia do indice com a versao adivinhada
+        Optional<Book> updated = repository.findFieldsById(Collections.singletonList(changes.getId()), BookFields.ALL)
+                .stream()
+                .findFirst();
+        cache.evict(changes.getId());
+        countCache.invalidate();
+        updated.ifPresent(this::indexed);
+        return updated;
     }
 
     @Override
+    @Timed(value = TIMER, histogram = true)
+    public boolean deleteById(Long id) {
+        if (id == null) {
+            throw new IllegalArgumentException("Book id cant be null");
+        }
+        int deleted;
+        try {
+            deleted = repository.deleteDirectlyById(id);
+        } catch (DataIntegrityViolationException e) {
+            // fk_loan_book sem cascade: o historico de emprestimos, devolvidos ou nao, segura o livro
+            throw new BusinessException(BOOK_WITH_LOANS);
+        }
+        if (deleted == 0) {
+            return false;
+        }
+        cache.evict(id);
+        countCache.invalidate();
+        unindexed(Book.builder().id(id).build());
+        return true;
+    }
+
+    @Override
+    @Timed(value = TIMER, histogram = true)
     public Page<Book> find(Book filter, Pageable pageRequest) {
-        Example<Book> example = Example.of(filter,
-                ExampleMatcher
-                    .matching()
-                    .withIgnoreCase()// consegue pesquisar tanto em caixa alta ou caixa baixa
-                    .withIgnoreNullValues()// ignora se tiver pesquisa nula
-                    .withStringMatcher( ExampleMatcher.StringMatcher.CONTAINING) // traz a pesquisa mesmo que o titulo nao esteje completo
+        return find(filter, pageRequest, repository::findSlice, repository::findAllById);
+    }
+
+    @Override
+    @Timed(value = TIMER, histogram = true)
+    public Page<Book> find(Book filter, Pageable pageRequest, BookFields fields) {
+        return find(filter, pageRequest,
+                (rowsFilter, rowsPage) -> repository.findFields(rowsFilter, rowsPage, fields),
+                ids -> repository.findFieldsById(ids, fields));
+    }
+
+    @Override
+    @Timed(value = TIMER, histogram = true)
+    public Slice<Book> findSlice(Book filter, Pageable pageRequest) {
+        return findSlice(filter, pageRequest, repository::findSlice, repository::findAllById);
+    }
 
-        );
-        return repository.findAll(example, pageRequest);
+    @Override
+    @Timed(value = TIMER, histogram = true)
+    public Slice<Book> findSlice(Book filter, Pageable pageRequest, BookFields fields) {
+        return findSlice(filter, pageRequest,
+                (rowsFilter, rowsPage) -> repository.findFields(rowsFilter, rowsPage, fields),
+                ids -> repository.findFieldsById(ids, fields));
     }
 
     @Override
+    @Timed(value = TIMER, histogram = true)
+    public Slice<Book> findAfter(Book filter, BookCursor cursor, int size) {
+        // busca uma linha a mais so para saber se existe proxima pagina
+        List<Book> rows = repository.findAfter(filter, cursor, size + 1);
+        boolean hasNext = rows.size() > size;
+        List<Book> content = hasNext ? new ArrayList<>(rows.subList(0, size)) : rows;
+        return new SliceImpl<>(content, PageRequest.of(0, size), hasNext);
+    }
+
+    @Override
+    @Timed(value = TIMER, histogram = true)
     public Optional<Book> getBookByIsbn(String isbn) {
-        return null;
+        isbn = Isbn.normalize(isbn); // hifenizado ou ISBN-10 acha o mesmo livro
+        Optional<Book> book = isbnIndex.get(isbn);
+        if (book.isPresent()) {
+            return book;
+        }
+        // fora do indice: ainda carregando, ou cadastrado por outra instancia; a base decide
+        if (!IsbnConverter.fits(isbn)) {
+            return Optional.empty();
+        }
+        Optional<Book> found = repository.findByIsbn(isbn);
+        found.ifPresent(isbnIndex::put);
+        return found;
+    }
+
+    @Override
+    @Timed(value = TIMER, histogram = true)
+    public List<SuggestIndex.Suggestion> suggest(String prefix, int limit) {
+        return suggestIndex.suggest(prefix, limit); // so memoria: a caixa de busca chama a cada tecla
+    }
+
+    @Override
+    @Timed(value = TIMER, histogram = true)
+    @Transactional(readOnly = true)
+    public void export(Consumer<Book> consumer) {
+        try (Stream<Book> books = repository.streamAll()) {
+            books.forEach(book -> {
+                consumer.accept(book);
+                repository.detach(book); // memoria constante, independente do tamanho do catalogo
+            });
+        }
+    }
+
+    // rows: pagina pela base com uma linha a mais; byIds: linhas das chaves que o indice de trigramas entregou
+    private Page<Book> find(Book filter, Pageable pageRequest,
+                            BiFunction<Book, Pageable, List<Book>> rows, Function<List<Long>, List<Book>> byIds) {
+        Optional<TrigramIndex.Hits> hits = searchIndexes(filter, pageRequest);
+        if (hits.isPresent()) {
+            return page(hits.get(), pageRequest, byIds);
+        }
+        // contem, ignorando caixa; o count so roda quando a pagina nao diz o total sozinha,
+        // e mesmo assim passa pelo cache de totais por filtro
+        List<Book> content = slice(rows.apply(filter, pageRequest), pageRequest);
+        return PageableExecutionUtils.getPage(content, pageRequest,
+                () -> countCache.get(filter, () -> repository.countMatching(filter)));
+    }
+
+    private Slice<Book> findSlice(Book filter, Pageable pageRequest,
+                                  BiFunction<Book, Pageable, List<Book>> rows, Function<List<Long>, List<Book>> byIds) {
+        Optional<TrigramIndex.Hits> hits = searchIndexes(filter, pageRequest);
+        if (hits.isPresent()) {
+            Page<Book> page = page(hits.get(), pageRequest, byIds);
+            return new SliceImpl<>(page.getContent(), pageRequest, page.hasNext());
+        }
+        // uma linha a mais so para saber se existe proxima pagina, sem count
+        List<Book> found = rows.apply(filter, pageRequest);
+        List<Book> content = slice(found, pageRequest);
+        return new SliceImpl<>(content, pageRequest, found.size() > content.size());
+    }
+
+    // com ?available= o indice responde tambem sem termo com trigrama: todos os livros menos os do bitmap, ou so os do bitmap;
+    // sem o bitmap carregado a base filtra pelo exists em loan
+    // o indice so ordena ate o fim da pagina pedida; o total vem da contagem de quem casou
+    private Optional<TrigramIndex.Hits> searchIndexes(Book filter, Pageable pageRequest) {
+        Sort sort = pageRequest.getSort();
+        int limit = pageRequest.isPaged()
+                ? (int) Math.min(pageRequest.getOffset() + pageRequest.getPageSize(), Integer.MAX_VALUE)
+                : Integer.MAX_VALUE;
+        if (filter.getAvailable() == null) {
+            return trigramIndex.search(filter, sort, limit);
+        }
+        if (!availability.isReady()) {
+            return Optional.empty();
+        }
+        return trigramIndex.search(filter, sort, availability.snapshot(), !filter.getAvailable(), limit);
+    }
+
+    private static List<Book> slice(List<Book> rows, Pageable pageRequest) {
+        if (pageRequest.isPaged() && rows.size() > pageRequest.getPageSize()) {
+            return new ArrayList<>(rows.subList(0, pageRequest.getPageSize()));
+        }
+        return rows;
+    }
+
+    // os indices so mudam depois do commit: dentro de uma transacao maior um rollback nao deixa o indice a frente da base;
+    // entre atualizacoes concorrentes do mesmo livro o IsbnIndex fica com a de maior versao
+    private void indexed(Book book) {
+        afterCommit(() -> {
+            isbnIndex.put(book);
+            trigramIndex.put(book);
+            isbnFilter.put(book);
+            suggestIndex.put(book);
+        });
+    }
+
+    private void unindexed(Book book) {
+        afterCommit(() -> {
+            isbnIndex.remove(book);
+            trigramIndex.remove(book);
+            suggestIndex.remove(book);
+        });
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run(); // o repositorio ja fez o commit na propria transacao
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    // enquanto o filtro carrega, todo isbn pode existir
+    private boolean mightExist(String isbn) {
+        return !isbnFilter.isReady() || isbnFilter.mightContain(isbn);
+    }
+
+    // o indice ja entrega os ids ordenados ate o fim da pagina e o total, a base so carrega as linhas da pagina pela chave primaria
+    private Page<Book> page(TrigramIndex.Hits hits, Pageable pageRequest, Function<List<Long>, List<Book>> byIds) {
+        List<Long> ids = hits.getIds();
+        List<Long> pageIds = ids;
+        if (pageRequest.isPaged()) {
+            int from = (int) Math.min(pageRequest.getOffset(), ids.size());
+            int to = Math.min(from + pageRequest.getPageSize(), ids.size());
+            pageIds = ids.subList(from, to);
+        }
+        if (pageIds.isEmpty()) {
+            return new PageImpl<>(new ArrayList<>(), pageRequest, hits.getTotal());
+        }
+        Map<Long, Book> books = byIds.apply(pageIds)
+                .stream()
+                .collect(Collectors.toMap(Book::getId, Function.identity()));
+        List<Book> content = pageIds.stream()
+                .map(books::get)
+                .filter(book -> book != null)
+                .collect(Collectors.toList());
+        return new PageImpl<>(content, pageRequest, hits.getTotal());
     }
 }
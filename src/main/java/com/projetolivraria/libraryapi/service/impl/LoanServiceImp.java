@@ -0,0 +1,147 @@
+package com.projetolivraria.libraryapi.service.impl;
+
+import com.projetolivraria.libraryapi.api.exception.BusinessException;
+import com.projetolivraria.libraryapi.api.service.LoanService;
+import com.projetolivraria.libraryapi.model.entity.Loan;
+import com.projetolivraria.libraryapi.model.repository.LoanFilter;
+import com.projetolivraria.libraryapi.model.repository.LoanRepository;
+import com.projetolivraria.libraryapi.service.index.AvailabilityIndex;
+import com.projetolivraria.libraryapi.service.journal.LoanWriteBehind;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+@Service
+public class LoanServiceImp implements LoanService {
+
+    // locks por faixa de livro: pedidos do mesmo livro fazem fila, livros diferentes quase nunca disputam o mesmo lock
+    static final int STRIPES = 1024;
+
+    private final LoanRepository repository;
+    private final LoanWriteBehind writeBehind; // nulo quando library.loans.write-behind.enabled=false
+    private final AvailabilityIndex availability;
+    private final Lock[] locks = new Lock[STRIPES];
+    // ordem do ultimo emprestimo criado em cada faixa, para a devolucao saber se algum cruzou com ela
+    private final long[] loanedAt = new long[STRIPES];
+    private final AtomicLong sequence = new AtomicLong();
+
+    public LoanServiceImp(LoanRepository repository, Optional<LoanWriteBehind> writeBehind, AvailabilityIndex availability) {
+        this.repository = repository;
+        this.writeBehind = writeBehind.orElse(null);
+        this.availability = availability;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public Loan save(Loan loan) {
+        if (loan == null || loan.getBook() == null || loan.getBook().getId() == null) {
+            throw new IllegalArgumentException("Loan book cant be null");
+        }
+        Long bookId = loan.getBook().getId();
+        // caminho rapido sem lock: um livro popular ja emprestado e recusado direto
+        if (isLoaned(bookId)) {
+            throw new BusinessException("Book already loaned");
+        }
+        Lock lock = lockFor(bookId);
+        lock.lock();
+        try {
+            if (isLoaned(bookId)) {
+                throw new BusinessException("Book already loaned");
+            }
+            loan.setReturned(false);
+            loan.setOpenBookId(bookId);
+            Loan saved = writeBehind != null ? writeBehind.submit(loan) : repository.saveAndFlush(loan);
+            // ainda com o lock do livro, para nao cruzar com uma devolucao do mesmo livro
+            availability.loaned(bookId);
+            loanedAt[stripe(bookId)] = sequence.incrementAndGet();
+            return saved;
+        } catch (DataIntegrityViolationException e) {
+            // outra instancia da aplicacao abriu o emprestimo entre a consulta e o insert
+            throw new BusinessException("Book already loaned");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public ReturnResult returnLoan(Long id) {
+        if (id == null) {
+            throw new IllegalArgumentException("Loan id cant be null");
+        }
+        // o proprio UPDATE devolve o livro; o lock do livro so vem depois dele
+        long before = sequence.get();
+        Optional<Long> bookId = repository.markReturned(id);
+        if (!bookId.isPresent() && writeBehind != null && writeBehind.isPendingLoan(id)) {
+            // emprestimo ainda no journal: grava os lotes pendentes e tenta de novo
+            try {
+                writeBehind.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Falha ao gravar os emprestimos do journal", e);
+            }
+            bookId = repository.markReturned(id);
+        }
+        if (!bookId.isPresent()) {
+            // so no caminho sem devolucao: separa o repetido do inexistente
+            return repository.existsById(id) ? ReturnResult.ALREADY_RETURNED : ReturnResult.NOT_FOUND;
+        }
+        Lock lock = lockFor(bookId.get());
+        lock.lock();
+        try {
+            // entre o UPDATE e o lock o livro ja pode ter sido emprestado de novo; com algum emprestimo novo na faixa
+            // a base decide, senao o bitmap apagaria o emprestimo novo
+            if (loanedAt[stripe(bookId.get())] <= before || !isLoaned(bookId.get())) {
+                availability.returned(bookId.get());
+            }
+            return ReturnResult.RETURNED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Slice<Loan> find(LoanFilter filter, Pageable pageRequest) {
+        long offset = pageRequest.isPaged() ? pageRequest.getOffset() : 0;
+        int size = pageRequest.isPaged() ? pageRequest.getPageSize() : Integer.MAX_VALUE - 1;
+        return slice(repository.search(filter, null, offset, size + 1), pageRequest, size);
+    }
+
+    @Override
+    public Slice<Loan> findAfter(LoanFilter filter, Long afterId, int size) {
+        return slice(repository.search(filter, afterId, 0, size + 1), PageRequest.of(0, size), size);
+    }
+
+    // busca uma linha a mais so para saber se existe proxima pagina
+    private static Slice<Loan> slice(List<Loan> rows, Pageable pageRequest, int size) {
+        boolean hasNext = rows.size() > size;
+        List<Loan> content = hasNext ? new ArrayList<>(rows.subList(0, size)) : rows;
+        return new SliceImpl<>(content, pageRequest, hasNext);
+    }
+
+    private boolean isLoaned(Long bookId) {
+        return (writeBehind != null && writeBehind.isPending(bookId)) || repository.existsByOpenBookId(bookId);
+    }
+
+    Lock lockFor(Long bookId) {
+        return locks[stripe(bookId)];
+    }
+
+    private static int stripe(Long bookId) {
+        int hash = bookId.hashCode();
+        hash ^= (hash >>> 16);
+        return hash & (STRIPES - 1);
+    }
+}
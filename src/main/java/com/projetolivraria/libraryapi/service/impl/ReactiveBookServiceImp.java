@@ -0,0 +1,34 @@
+package com.projetolivraria.libraryapi.service.impl;
+
+import com.projetolivraria.libraryapi.api.exception.BusinessException;
+import com.projetolivraria.libraryapi.model.entity.Book;
+import com.projetolivraria.libraryapi.model.repository.ReactiveBookRepository;
+import com.projetolivraria.libraryapi.service.ReactiveBookService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Service
+@ConditionalOnProperty(prefix = "library.reactive", name = "enabled", havingValue = "true")
+public class ReactiveBookServiceImp implements ReactiveBookService {
+
+    private ReactiveBookRepository repository;
+
+    public ReactiveBookServiceImp(ReactiveBookRepository repository) {
+        this.repository = repository;
+    }
+
+    @Override
+    public Mono<Book> getById(Long id) {
+        return repository.findById(id);
+    }
+
+    @Override
+    public Flux<Book> find(Book filter, long afterId, int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            return Flux.error(new BusinessException("limit deve ficar entre 1 e " + MAX_LIMIT));
+        }
+        return repository.findAll(filter, afterId, limit);
+    }
+}
@@ -0,0 +1,131 @@
+package com.projetolivraria.libraryapi.service.index;
+
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+// ids dos livros com emprestimo aberto num bitmap compactado (Roaring): fora dele o livro esta disponivel
+// a pesquisa e o detalhe consultam a disponibilidade sem ir na tabela de emprestimos
+// mantido pelo LoanService desta instancia e recarregado da base na subida pelo BookIndexLoader
+@Component
+public class AvailabilityIndex {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Roaring64Bitmap loaned = new Roaring64Bitmap();
+    // alteracoes que chegam durante a recarga, reaplicadas no bitmap novo antes da troca
+    private List<Change> changesDuringLoad;
+    private volatile boolean ready;
+
+    // antes da carga inicial terminar o bitmap nao diz nada; quem consulta vai na base
+    public boolean isReady() {
+        return ready;
+    }
+
+    public boolean isLoaned(long bookId) {
+        lock.readLock().lock();
+        try {
+            return loaned.contains(bookId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long loanedCount() {
+        lock.readLock().lock();
+        try {
+            return loaned.getLongCardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // copia do bitmap para percorrer sem segurar o lock; o bitmap so tem os livros emprestados, fica pequeno
+    public Roaring64Bitmap snapshot() {
+        lock.readLock().lock();
+        try {
+            return loaned.clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void loaned(Long bookId) {
+        apply(new Change(bookId, true));
+    }
+
+    public void returned(Long bookId) {
+        apply(new Change(bookId, false));
+    }
+
+    // source entrega os ids com emprestimo aberto; a leitura da base acontece fora do lock
+    public void load(Consumer<LongConsumer> source) {
+        lock.writeLock().lock();
+        try {
+            changesDuringLoad = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Roaring64Bitmap fresh = new Roaring64Bitmap();
+        try {
+            source.accept(fresh::addLong);
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                changesDuringLoad = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+        fresh.runOptimize();
+        lock.writeLock().lock();
+        try {
+            // reaplicar em ordem e idempotente: o ultimo evento de cada livro prevalece sobre a leitura
+            changesDuringLoad.forEach(change -> change.applyTo(fresh));
+            changesDuringLoad = null;
+            loaned = fresh;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(Change change) {
+        if (change.bookId == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            change.applyTo(loaned);
+            if (changesDuringLoad != null) {
+                changesDuringLoad.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static final class Change {
+        final Long bookId;
+        final boolean loaned;
+
+        Change(Long bookId, boolean loaned) {
+            this.bookId = bookId;
+            this.loaned = loaned;
+        }
+
+        void applyTo(Roaring64Bitmap bitmap) {
+            if (loaned) {
+                bitmap.addLong(bookId);
+            } else {
+                bitmap.removeLong(bookId);
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.projetolivraria.libraryapi.service.index;
+
+import com.projetolivraria.libraryapi.model.entity.Book;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.function.Function;
+
+// cache read-through do getById sobre o CacheManager do Spring (spring.cache.*)
+// guarda e devolve copias: quem chama pode alterar o livro sem mexer no que esta no cache
+@Component
+public class BookCache {
+
+    public static final String NAME = "books";
+
+    private final Cache cache;
+
+    public BookCache(CacheManager cacheManager) {
+        this.cache = cacheManager.getCache(NAME);
+    }
+
+    public Optional<Book> get(Long id, Function<Long, Optional<Book>> loader) {
+        Book cached = cache == null ? null : cache.get(id, Book.class);
+        if (cached != null) {
+            return Optional.of(cached.toBuilder().build());
+        }
+        Optional<Book> loaded = loader.apply(id);
+        if (cache != null) {
+            loaded.ifPresent(book -> cache.put(id, book.toBuilder().build()));
+        }
+        return loaded;
+    }
+
+    // so o que ja esta no cache, sem carregar da base
+    public Optional<Book> peek(Long id) {
+        Book cached = cache == null ? null : cache.get(id, Book.class);
+        return cached == null ? Optional.empty() : Optional.of(cached.toBuilder().build());
+    }
+
+    public void evict(Long id) {
+        if (cache != null && id != null) {
+            cache.evict(id);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.projetolivraria.libraryapi.service.index;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.projetolivraria.libraryapi.model.entity.Book;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// total de livros por filtro da pesquisa paginada, para nao repetir o count(*) a cada pagina
+// o total pode ficar ate "staleness" desatualizado; qualquer escrita de livro limpa tudo
+// emprestimos nao limpam: com ?available= o total pode atrasar as devolucoes ate "staleness"
+@Component
+public class BookCountCache {
+
+    private final Cache<String, Long> counts;
+    // muda a cada escrita: um count que comecou antes dela nao entra no cache
+    private final AtomicLong generation = new AtomicLong();
+
+    public BookCountCache(@Value("${library.books.count-cache.staleness:30s}") Duration staleness,
+                          @Value("${library.books.count-cache.maximum-size:10000}") long maximumSize) {
+        this.counts = staleness.isZero() || staleness.isNegative() ? null : Caffeine.newBuilder()
+                .expireAfterWrite(staleness)
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    public long get(Book filter, LongSupplier loader) {
+        if (counts == null) {
+            return loader.getAsLong();
+        }
+        String key = key(filter);
+        Long cached = counts.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        long before = generation.get();
+        long count = loader.getAsLong();
+        if (generation.get() == before) {
+            counts.put(key, count);
+        }
+        return count;
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+        if (counts != null) {
+            counts.invalidateAll();
+        }
+    }
+
+    // a pesquisa ignora caixa, entao "Cesar" e "CESAR" dividem o mesmo total
+    static String key(Book filter) {
+        return normalize(filter.getTitle()) + '\u0000' + normalize(filter.getAuthor()) + '\u0000'
+                + normalize(filter.getIsbn()) + '\u0000' + (filter.getId() == null ? "" : filter.getId())
+                + '\u0000' + (filter.getAvailable() == null ? "" : filter.getAvailable());
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "\u0001" : value.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,16 @@
+package com.projetolivraria.libraryapi.service.index;
+
+import com.projetolivraria.libraryapi.model.entity.Book;
+
+// estrutura em memoria mantida em sincronia com a tabela de livros
+public interface BookIndex {
+
+    void put(Book book);
+
+    void remove(Book book);
+
+    void clear();
+
+    // chamado pelo BookIndexLoader quando a carga inicial termina
+    void markReady();
+}
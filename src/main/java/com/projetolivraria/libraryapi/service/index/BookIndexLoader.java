@@ -0,0 +1,60 @@
+package com.projetolivraria.libraryapi.service.index;
+
+import com.projetolivraria.libraryapi.model.entity.Book;
+import com.projetolivraria.libraryapi.model.repository.BookRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+
+// carrega todos os indices em memoria na subida da aplicacao, lendo a tabela uma unica vez
+@Slf4j
+@Component
+public class BookIndexLoader {
+
+    private static final int PAGE_SIZE = 1000;
+
+    private final BookRepository repository;
+    private final List<BookIndex> indexes;
+    private final AvailabilityIndex availability;
+    private final JdbcTemplate jdbcTemplate;
+
+    public BookIndexLoader(BookRepository repository, List<BookIndex> indexes, AvailabilityIndex availability, JdbcTemplate jdbcTemplate) {
+        this.repository = repository;
+        this.indexes = indexes;
+        this.availability = availability;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void load() {
+        indexes.forEach(BookIndex::clear);
+        Pageable page = PageRequest.of(0, PAGE_SIZE, Sort.by("id"));
+        long lastId = 0;
+        long total = 0;
+        Slice<Book> slice;
+        do {
+            // paginacao por chave (id > ultimo id) para nao degradar com OFFSET em tabelas grandes
+            slice = repository.findByIdGreaterThan(lastId, page);
+            for (Book book : slice) {
+                indexes.forEach(index -> index.put(book));
+                lastId = book.getId();
+                total++;
+            }
+        } while (slice.hasNext());
+        indexes.forEach(BookIndex::markReady);
+        log.info("Indices de livros carregados com {} livros", total);
+
+        // so a coluna open_book_id, lida em fluxo, sem montar os emprestimos
+        availability.load(ids -> jdbcTemplate.query("select open_book_id from loan where open_book_id is not null",
+                (RowCallbackHandler) rs -> ids.accept(rs.getLong(1))));
+        log.info("Bitmap de disponibilidade carregado com {} livros emprestados", availability.loanedCount());
+    }
+}
@@ -0,0 +1,158 @@
+package com.projetolivraria.libraryapi.service.index;
+
+import com.projetolivraria.libraryapi.model.entity.Book;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// filtro de Bloom escalavel sobre os isbns cadastrados, para o cadastro pular o existsByIsbn
+// "nao contem" e certeza; "pode conter" vai para a consulta. quem decide no fim e a unique de book.isbn
+// livro apagado continua no filtro (Bloom nao remove), o que so gera um falso positivo a mais
+@Component
+public class IsbnBloomFilter implements BookIndex {
+
+    // cada fatia nova tem o dobro da capacidade e metade da taxa de falso positivo da anterior,
+    // assim a taxa total fica abaixo de 2 * fpp por mais que o catalogo cresca
+    static final int GROWTH = 2;
+    static final double TIGHTENING = 0.5;
+
+    private final long expectedInsertions;
+    private final double fpp;
+    private final List<Slice> slices = new ArrayList<>();
+    private long count;
+    private long initialCapacity;
+    private volatile boolean ready;
+
+    public IsbnBloomFilter(@Value("${library.books.isbn-filter.expected-insertions:100000}") long expectedInsertions,
+                           @Value("${library.books.isbn-filter.fpp:0.001}") double fpp) {
+        if (expectedInsertions < 1 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("Parametros invalidos do filtro de isbn");
+        }
+        this.expectedInsertions = expectedInsertions;
+        this.fpp = fpp;
+        this.initialCapacity = expectedInsertions;
+        slices.add(new Slice(initialCapacity, fpp));
+    }
+
+    // antes da carga inicial terminar um "nao contem" ainda nao vale
+    public boolean isReady() {
+        return ready;
+    }
+
+    public synchronized boolean mightContain(String isbn) {
+        if (isbn == null) {
+            return false;
+        }
+        long hash1 = hash(isbn, 0x9E3779B97F4A7C15L);
+        long hash2 = hash(isbn, 0xC2B2AE3D27D4EB4FL);
+        for (Slice slice : slices) {
+            if (slice.mightContain(hash1, hash2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized long approximateCount() {
+        return count;
+    }
+
+    @Override
+    public synchronized void put(Book book) {
+        if (book == null || book.getIsbn() == null) {
+            return;
+        }
+        long hash1 = hash(book.getIsbn(), 0x9E3779B97F4A7C15L);
+        long hash2 = hash(book.getIsbn(), 0xC2B2AE3D27D4EB4FL);
+        for (Slice slice : slices) {
+            if (slice.mightContain(hash1, hash2)) {
+                return; // ja presente (ou colisao): nao gasta capacidade
+            }
+        }
+        Slice current = slices.get(slices.size() - 1);
+        if (current.isFull()) {
+            current = new Slice(current.capacity * GROWTH, current.fpp * TIGHTENING);
+            slices.add(current);
+        }
+        current.put(hash1, hash2);
+        count++;
+    }
+
+    @Override
+    public void remove(Book book) {
+        // Bloom nao remove; a recarga na subida limpa os apagados
+    }
+
+    // na recarga a primeira fatia ja nasce do tamanho que o catalogo tinha, sem encadear fatias pequenas
+    @Override
+    public synchronized void clear() {
+        ready = false;
+        initialCapacity = Math.max(expectedInsertions, count);
+        slices.clear();
+        slices.add(new Slice(initialCapacity, fpp));
+        count = 0;
+    }
+
+    @Override
+    public void markReady() {
+        ready = true;
+    }
+
+    // FNV-1a de 64 bits com semente, finalizado pelo mix do murmur3
+    static long hash(String value, long seed) {
+        long hash = 0xCBF29CE484222325L ^ seed;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static final class Slice {
+        final long capacity;
+        final double fpp;
+        final long[] bits;
+        final long size;
+        final int hashes;
+        long count;
+
+        Slice(long capacity, double fpp) {
+            this.capacity = capacity;
+            this.fpp = fpp;
+            // m = -n ln(p) / (ln 2)^2 e k = m/n ln 2
+            long optimal = (long) Math.ceil(-capacity * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+            this.bits = new long[(int) Math.min(Integer.MAX_VALUE - 8, (optimal + 63) / 64)];
+            this.size = bits.length * 64L;
+            this.hashes = Math.max(1, (int) Math.round((double) size / capacity * Math.log(2)));
+        }
+
+        boolean isFull() {
+            return count >= capacity;
+        }
+
+        boolean mightContain(long hash1, long hash2) {
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(hash1 + i * hash2, size);
+                if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void put(long hash1, long hash2) {
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(hash1 + i * hash2, size);
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+            count++;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.projetolivraria.libraryapi.service.index;
+
+import com.projetolivraria.libraryapi.model.entity.Book;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+@Component
+public class IsbnIndex implements BookIndex {
+
+    private final ConcurrentMap<String, Book> byIsbn = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, String> isbnById = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    // leitura sem lock; devolve uma copia para ninguem alterar o livro guardado no indice
+    public Optional<Book> get(String isbn) {
+        if (isbn == null) {
+            return Optional.empty();
+        }
+        Book book = byIsbn.get(isbn);
+        return book == null ? Optional.empty() : Optional.of(book.toBuilder().build());
+    }
+
+    public Optional<Book> getById(Long id) {
+        String isbn = isbnById.get(id);
+        return isbn == null ? Optional.empty() : get(isbn);
+    }
+
+    // carga inicial terminada; um miss ainda vai para a base, o livro pode ter sido cadastrado por outra instancia
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        return byIsbn.size();
+    }
+
+    @Override
+    public synchronized void put(Book book) {
+        if (book == null || book.getId() == null || book.getIsbn() == null) {
+            return;
+        }
+        String previous = isbnById.get(book.getId());
+        if (previous != null && isOlder(book, byIsbn.get(previous))) {
+            return; // uma atualizacao mais nova do mesmo livro chegou antes desta
+        }
+        isbnById.put(book.getId(), book.getIsbn());
+        if (previous != null && !previous.equals(book.getIsbn())) {
+            byIsbn.remove(previous);
+        }
+        byIsbn.put(book.getIsbn(), book.toBuilder().build());
+    }
+
+    @Override
+    public synchronized void remove(Book book) {
+        if (book == null || book.getId() == null) {
+            return;
+        }
+        String isbn = isbnById.remove(book.getId());
+        if (isbn != null) {
+            byIsbn.remove(isbn);
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        ready = false;
+        byIsbn.clear();
+        isbnById.clear();
+    }
+
+    @Override
+    public void markReady() {
+        ready = true;
+    }
+
+    // pela versao do @Version: sem versao nos dois lados a ultima escrita vale
+    private static boolean isOlder(Book book, Book current) {
+        return current != null && book.getVersion() != null && current.getVersion() != null
+                && book.getVersion() < current.getVersion();
+    }
+}
@@ -0,0 +1,349 @@
+package com.projetolivraria.libraryapi.service.index;
+
+import com.projetolivraria.libraryapi.model.entity.Book;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+// sugestoes por prefixo (typeahead) de titulos e autores numa arvore radix comprimida
+// cada valor entra normalizado (minusculas, sem acento e pontuacao) a partir do inicio e de cada palavra,
+// e cada no guarda as melhores sugestoes da sua subarvore: a consulta so desce o prefixo digitado
+@Component
+public class SuggestIndex implements BookIndex {
+
+    public static final int MAX_SUGGESTIONS = 20;
+    public static final String TITLE = "title";
+    public static final String AUTHOR = "author";
+
+    // palavras de um mesmo valor que viram inicio de sugestao; limita o tamanho da arvore com titulos longos
+    static final int MAX_WORDS = 8;
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // mais livros com o mesmo valor primeiro, depois ordem alfabetica
+    private static final Comparator<Term> RANK = Comparator.<Term>comparingInt(term -> term.books.size()).reversed()
+            .thenComparing(term -> term.key)
+            .thenComparing(term -> term.field);
+
+    private final Node root = new Node("");
+    private final Map<String, Term> terms = new HashMap<>(); // campo + valor normalizado
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean ready;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // ate limit sugestoes cujo valor, ou alguma palavra dele, comeca com o prefixo
+    public List<Suggestion> suggest(String prefix, int limit) {
+        String key = normalize(prefix);
+        if (!ready || key == null || key.isEmpty() || limit < 1) {
+            return Collections.emptyList();
+        }
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            int matched = 0;
+            while (matched < key.length()) {
+                Node child = node.children.get(key.charAt(matched));
+                if (child == null) {
+                    return Collections.emptyList();
+                }
+                int common = common(child.label, key, matched);
+                if (matched + common < key.length() && common < child.label.length()) {
+                    return Collections.emptyList();
+                }
+                matched += common; // o prefixo pode terminar no meio da aresta
+                node = child;
+            }
+            return node.top.stream()
+                    .limit(Math.min(limit, MAX_SUGGESTIONS))
+                    .map(term -> new Suggestion(term.text, term.field, term.books.size()))
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void put(Book book) {
+        if (book == null || book.getId() == null) {
+            return;
+        }
+        Entry entry = new Entry(book.getTitle(), book.getAuthor());
+        lock.writeLock().lock();
+        try {
+            Entry previous = entries.put(book.getId(), entry);
+            if (previous != null) {
+                unlink(TITLE, previous.title, book.getId());
+                unlink(AUTHOR, previous.author, book.getId());
+            }
+            link(TITLE, entry.title, book.getId());
+            link(AUTHOR, entry.author, book.getId());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(Book book) {
+        if (book == null || book.getId() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            Entry previous = entries.remove(book.getId());
+            if (previous != null) {
+                unlink(TITLE, previous.title, book.getId());
+                unlink(AUTHOR, previous.author, book.getId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            ready = false;
+            root.children.clear();
+            root.terms = null;
+            root.top = Collections.emptyList();
+            terms.clear();
+            entries.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void markReady() {
+        ready = true;
+    }
+
+    private void link(String field, String text, long id) {
+        String key = normalize(text);
+        if (key == null || key.isEmpty()) {
+            return;
+        }
+        Term term = terms.get(field + ":" + key);
+        if (term == null) {
+            term = new Term(field, key, text);
+            terms.put(field + ":" + key, term);
+            for (String start : starts(key)) {
+                insert(start, term);
+            }
+        }
+        term.books.add(id);
+        rerank(term); // a contagem mudou, a posicao nas listas dos nos tambem
+    }
+
+    private void unlink(String field, String text, long id) {
+        String key = normalize(text);
+        Term term = key == null ? null : terms.get(field + ":" + key);
+        if (term == null) {
+            return;
+        }
+        term.books.remove(id);
+        if (!term.books.isEmpty()) {
+            rerank(term);
+            return;
+        }
+        terms.remove(field + ":" + key);
+        for (String start : starts(key)) {
+            delete(start, term);
+        }
+    }
+
+    private void insert(String key, Term term) {
+        Node node = root;
+        int i = 0;
+        while (i < key.length()) {
+            Node child = node.children.get(key.charAt(i));
+            if (child == null) {
+                child = new Node(key.substring(i));
+                node.children.put(key.charAt(i), child);
+                node = child;
+                break;
+            }
+            int common = common(child.label, key, i);
+            if (common < child.label.length()) {
+                // divide a aresta no ponto em que as chaves se separam
+                Node middle = new Node(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                middle.children.put(child.label.charAt(0), child);
+                node.children.put(middle.label.charAt(0), middle);
+                child = middle;
+            }
+            i += common;
+            node = child;
+        }
+        if (node.terms == null) {
+            node.terms = new HashSet<>();
+        }
+        node.terms.add(term);
+    }
+
+    private void delete(String key, Term term) {
+        List<Node> path = path(key);
+        if (path == null) {
+            return;
+        }
+        Node last = path.get(path.size() - 1);
+        if (last.terms != null) {
+            last.terms.remove(term);
+            if (last.terms.isEmpty()) {
+                last.terms = null;
+            }
+        }
+        // no vazio sai do pai; no sem valor com um unico filho se junta a ele, para a arvore seguir comprimida
+        for (int k = path.size() - 1; k > 0; k--) {
+            Node node = path.get(k);
+            if (node.terms != null) {
+                continue;
+            }
+            if (node.children.isEmpty()) {
+                path.get(k - 1).children.remove(node.label.charAt(0));
+                path.remove(k);
+            } else if (node.children.size() == 1) {
+                Node only = node.children.values().iterator().next();
+                node.label = node.label + only.label;
+                node.children = only.children;
+                node.terms = only.terms;
+            }
+        }
+        rank(path);
+    }
+
+    private void rerank(Term term) {
+        for (String start : starts(term.key)) {
+            List<Node> path = path(start);
+            if (path != null) {
+                rank(path);
+            }
+        }
+    }
+
+    // nos do caminho da raiz ate o no da chave, ou nulo se a chave nao esta na arvore
+    private List<Node> path(String key) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        path.add(node);
+        int i = 0;
+        while (i < key.length()) {
+            node = node.children.get(key.charAt(i));
+            if (node == null || !key.startsWith(node.label, i)) {
+                return null;
+            }
+            i += node.label.length();
+            path.add(node);
+        }
+        return path;
+    }
+
+    // recalcula as melhores sugestoes de baixo para cima: as do proprio no mais as dos filhos
+    private static void rank(List<Node> path) {
+        for (int k = path.size() - 1; k >= 0; k--) {
+            Node node = path.get(k);
+            List<Term> candidates = new ArrayList<>();
+            if (node.terms != null) {
+                candidates.addAll(node.terms);
+            }
+            node.children.values().forEach(child -> candidates.addAll(child.top));
+            // o mesmo valor chega por mais de uma palavra
+            node.top = candidates.stream()
+                    .distinct()
+                    .sorted(RANK)
+                    .limit(MAX_SUGGESTIONS)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    // inicio do valor e de cada palavra seguinte
+    private static List<String> starts(String key) {
+        List<String> starts = new ArrayList<>();
+        starts.add(key);
+        for (int i = key.indexOf(' '); i >= 0 && starts.size() < MAX_WORDS; i = key.indexOf(' ', i + 1)) {
+            starts.add(key.substring(i + 1));
+        }
+        return starts;
+    }
+
+    private static int common(String label, String key, int offset) {
+        int max = Math.min(label.length(), key.length() - offset);
+        int i = 0;
+        while (i < max && label.charAt(i) == key.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    static String normalize(String value) {
+        if (value == null) {
+            return null;
+        }
+        String plain = MARKS.matcher(Normalizer.normalize(value, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARATORS.matcher(plain.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    // sugestao devolvida: texto como foi cadastrado, campo de origem e quantos livros tem esse valor
+    @Getter
+    @AllArgsConstructor
+    public static final class Suggestion {
+        private final String text;
+        private final String field;
+        private final int books;
+    }
+
+    private static final class Term {
+        final String field;
+        final String key;
+        final String text;
+        final Set<Long> books = new HashSet<>();
+
+        Term(String field, String key, String text) {
+            this.field = field;
+            this.key = key;
+            this.text = text;
+        }
+    }
+
+    private static final class Entry {
+        final String title;
+        final String author;
+
+        Entry(String title, String author) {
+            this.title = title;
+            this.author = author;
+        }
+    }
+
+    private static final class Node {
+        String label; // trecho da chave na aresta que chega neste no
+        Map<Character, Node> children = new HashMap<>();
+        Set<Term> terms; // valores que comecam exatamente aqui; nulo na maioria dos nos
+        List<Term> top = Collections.emptyList();
+
+        Node(String label) {
+            this.label = label;
+        }
+    }
+}
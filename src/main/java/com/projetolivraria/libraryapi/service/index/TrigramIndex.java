@@ -0,0 +1,361 @@
+package com.projetolivraria.libraryapi.service.index;
+
+import com.projetolivraria.libraryapi.model.entity.Book;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.roaringbitmap.longlong.LongIterator;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.LongPredicate;
+
+// indice invertido de trigramas sobre title, author e isbn
+// responde o mesmo "contem, ignorando caixa" do Example sem varrer a tabela
+// a resposta nao passa pela base e as escritas de outra instancia nunca chegam aqui: com mais de uma instancia
+// (library.books.index.single-node=false) o indice fica vazio e toda pesquisa vai para a base
+@Component
+public class TrigramIndex implements BookIndex {
+
+    static final int GRAM = 3;
+
+    private static final Map<String, Function<Entry, String>> SORTABLE = new HashMap<>();
+
+    static {
+        SORTABLE.put("title", entry -> entry.title);
+        SORTABLE.put("author", entry -> entry.author);
+        SORTABLE.put("isbn", entry -> entry.isbn);
+    }
+
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final Field title = new Field();
+    private final Field author = new Field();
+    private final Field isbn = new Field();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean ready;
+
+    @Value("${library.books.index.single-node:true}")
+    private boolean singleNode = true;
+
+    public TrigramIndex() {
+    }
+
+    TrigramIndex(boolean singleNode) {
+        this.singleNode = singleNode;
+    }
+
+    // devolve os ids que casam com o filtro, ja ordenados, ou vazio quando o indice nao consegue responder
+    public Optional<List<Long>> search(Book filter, Sort sort) {
+        return search(filter, sort, Integer.MAX_VALUE).map(Hits::getIds);
+    }
+
+    // so os primeiros limit ids na ordem pedida (offset + tamanho da pagina) e o total que casa com o filtro
+    public Optional<Hits> search(Book filter, Sort sort, int limit) {
+        return search(filter, sort, null, false, limit);
+    }
+
+    // so os ids dentro (inside) ou fora (!inside) de um conjunto, ex.: livros emprestados no filtro de disponibilidade;
+    // sem termo com trigrama responde mesmo assim, percorrendo o proprio conjunto ou todos os livros do indice
+    public Optional<Hits> search(Book filter, Sort sort, Roaring64Bitmap ids, boolean inside, int limit) {
+        if (!ready || !singleNode || filter.getId() != null || !isSortable(sort)) {
+            return Optional.empty();
+        }
+        String titleTerm = normalize(filter.getTitle());
+        String authorTerm = normalize(filter.getAuthor());
+        String isbnTerm = normalize(filter.getIsbn());
+        boolean grams = usable(titleTerm) || usable(authorTerm) || usable(isbnTerm);
+        if (!grams && ids == null) {
+            return Optional.empty(); // termos curtos demais para trigramas, fica com a consulta na base
+        }
+        LongPredicate keep = ids == null ? id -> true : inside ? ids::contains : id -> !ids.contains(id);
+        TopEntries top = new TopEntries(comparator(sort), limit);
+
+        lock.readLock().lock();
+        try {
+            if (grams) {
+                // listas de todos os trigramas dos termos; um trigrama sem lista ja zera o resultado
+                List<Roaring64Bitmap> lists = new ArrayList<>();
+                if (!title.collect(titleTerm, lists) || !author.collect(authorTerm, lists) || !isbn.collect(isbnTerm, lists)) {
+                    return Optional.of(top.hits());
+                }
+                lists.sort(Comparator.comparingLong(Roaring64Bitmap::getLongCardinality));
+
+                // percorre a menor lista e consulta as outras, sem copiar nenhuma
+                LongIterator candidates = lists.get(0).getLongIterator();
+                while (candidates.hasNext()) {
+                    long id = candidates.next();
+                    if (inAll(lists, id) && keep.test(id)) {
+                        // os trigramas podem aparecer fora de ordem, entao confirma o "contem"
+                        offer(top, entries.get(id), titleTerm, authorTerm, isbnTerm);
+                    }
+                }
+            } else if (inside) {
+                LongIterator candidates = ids.getLongIterator();
+                while (candidates.hasNext()) {
+                    offer(top, entries.get(candidates.next()), titleTerm, authorTerm, isbnTerm);
+                }
+            } else {
+                for (Entry entry : entries.values()) {
+                    if (keep.test(entry.id)) {
+                        offer(top, entry, titleTerm, authorTerm, isbnTerm);
+                    }
+                }
+            }
+            return Optional.of(top.hits());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void put(Book book) {
+        if (!singleNode || book == null || book.getId() == null) {
+            return;
+        }
+        Entry entry = new Entry(book);
+        lock.writeLock().lock();
+        try {
+            Entry previous = entries.put(entry.id, entry);
+            if (previous != null) {
+                unindex(previous);
+            }
+            title.add(entry.title, entry.id);
+            author.add(entry.author, entry.id);
+            isbn.add(entry.isbn, entry.id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(Book book) {
+        if (book == null || book.getId() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            Entry previous = entries.remove(book.getId());
+            if (previous != null) {
+                unindex(previous);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            ready = false;
+            entries.clear();
+            title.postings.clear();
+            author.postings.clear();
+            isbn.postings.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void markReady() {
+        ready = true;
+    }
+
+    private void unindex(Entry entry) {
+        title.remove(entry.title, entry.id);
+        author.remove(entry.author, entry.id);
+        isbn.remove(entry.isbn, entry.id);
+    }
+
+    private static void offer(TopEntries top, Entry entry, String titleTerm, String authorTerm, String isbnTerm) {
+        if (entry != null
+                && contains(entry.title, titleTerm)
+                && contains(entry.author, authorTerm)
+                && contains(entry.isbn, isbnTerm)) {
+            top.offer(entry);
+        }
+    }
+
+    private static boolean inAll(List<Roaring64Bitmap> lists, long id) {
+        for (int i = 1; i < lists.size(); i++) {
+            if (!lists.get(i).contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSortable(Sort sort) {
+        for (Sort.Order order : sort) {
+            if (!"id".equals(order.getProperty()) && !SORTABLE.containsKey(order.getProperty())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Comparator<Entry> comparator(Sort sort) {
+        Comparator<Entry> comparator = null;
+        for (Sort.Order order : sort) {
+            Comparator<Entry> next = "id".equals(order.getProperty())
+                    ? Comparator.comparingLong(entry -> entry.id)
+                    : Comparator.comparing(SORTABLE.get(order.getProperty()), Comparator.nullsFirst(Comparator.naturalOrder()));
+            if (order.isDescending()) {
+                next = next.reversed();
+            }
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        // sem ordenacao explicita segue a ordem de insercao, como a base faz
+        Comparator<Entry> byId = Comparator.comparingLong(entry -> entry.id);
+        return comparator == null ? byId : comparator.thenComparing(byId);
+    }
+
+    private static boolean usable(String term) {
+        return term != null && term.length() >= GRAM;
+    }
+
+    // termo nulo nao filtra; os demais exigem valor presente, como o "like" na base
+    // o termo ja vem em minusculas; o valor e comparado ignorando caixa, sem guardar uma copia em minusculas
+    private static boolean contains(String value, String term) {
+        if (term == null) {
+            return true;
+        }
+        if (value == null) {
+            return false;
+        }
+        for (int i = 0; i + term.length() <= value.length(); i++) {
+            if (value.regionMatches(true, i, term, 0, term.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String normalize(String value) {
+        return value == null ? null : value.toLowerCase(Locale.ROOT);
+    }
+
+    // ids da pagina pedida em diante e o total de livros que casam com o filtro
+    @Getter
+    @AllArgsConstructor
+    public static final class Hits {
+        private final List<Long> ids;
+        private final int total;
+    }
+
+    // guarda so os limit primeiros na ordem pedida: um heap com o pior no topo, O(n log limit) em vez de ordenar tudo
+    private static final class TopEntries {
+        final Comparator<Entry> order;
+        final int limit;
+        final PriorityQueue<Entry> heap;
+        int total;
+
+        TopEntries(Comparator<Entry> order, int limit) {
+            this.order = order;
+            this.limit = limit;
+            this.heap = new PriorityQueue<>(order.reversed());
+        }
+
+        void offer(Entry entry) {
+            total++;
+            if (limit <= 0) {
+                return;
+            }
+            if (heap.size() < limit) {
+                heap.add(entry);
+            } else if (order.compare(entry, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+
+        Hits hits() {
+            List<Entry> sorted = new ArrayList<>(heap);
+            sorted.sort(order);
+            List<Long> ids = new ArrayList<>(sorted.size());
+            sorted.forEach(entry -> ids.add(entry.id));
+            return new Hits(ids, total);
+        }
+    }
+
+    // so os valores originais, usados na ordenacao; os trigramas saem deles em minusculas
+    private static final class Entry {
+        final long id;
+        final String title;
+        final String author;
+        final String isbn;
+
+        Entry(Book book) {
+            this.id = book.getId();
+            this.title = book.getTitle();
+            this.author = book.getAuthor();
+            this.isbn = book.getIsbn();
+        }
+    }
+
+    private static final class Field {
+        final Map<String, Roaring64Bitmap> postings = new HashMap<>();
+
+        void add(String value, long id) {
+            if (value == null) {
+                return;
+            }
+            for (String gram : grams(normalize(value))) {
+                postings.computeIfAbsent(gram, key -> new Roaring64Bitmap()).addLong(id);
+            }
+        }
+
+        void remove(String value, long id) {
+            if (value == null) {
+                return;
+            }
+            for (String gram : grams(normalize(value))) {
+                Roaring64Bitmap ids = postings.get(gram);
+                if (ids != null) {
+                    ids.removeLong(id);
+                    if (ids.isEmpty()) {
+                        postings.remove(gram);
+                    }
+                }
+            }
+        }
+
+        // junta as listas de cada trigrama do termo; falso quando algum trigrama nao tem livro
+        boolean collect(String term, List<Roaring64Bitmap> lists) {
+            if (!usable(term)) {
+                return true; // termo curto so e confirmado no "contem"
+            }
+            for (String gram : grams(term)) {
+                Roaring64Bitmap ids = postings.get(gram);
+                if (ids == null) {
+                    return false;
+                }
+                lists.add(ids);
+            }
+            return true;
+        }
+
+        static Set<String> grams(String value) {
+            Set<String> grams = new HashSet<>();
+            for (int i = 0; i + GRAM <= value.length(); i++) {
+                grams.add(value.substring(i, i + GRAM));
+            }
+            return grams;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.projetolivraria.libraryapi.service.journal;
+
+import com.projetolivraria.libraryapi.model.entity.Book;
+import com.projetolivraria.libraryapi.model.entity.Loan;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.zip.CRC32;
+
+// arquivo de emprestimos somente de append, dividido em segmentos
+// cada registro: tamanho (int), crc32 (long) e os dados do emprestimo
+// locks explicitos em vez de synchronized: quem espera o fsync nao prende a thread de plataforma de uma thread virtual
+@Slf4j
+public class LoanJournal implements AutoCloseable {
+
+    static final String PREFIX = "loans-";
+    static final String SUFFIX = ".journal";
+
+    private final Path directory;
+    private final ReentrantLock writeLock = new ReentrantLock(); // escrita no canal e troca de segmento
+    private final ReentrantLock syncLock = new ReentrantLock(); // fsync; a escrita dos outros continua enquanto ele roda
+
+    private FileChannel channel;
+    private Path current;
+    private volatile long segment;
+    private volatile long written;
+    private volatile long synced;
+
+    public LoanJournal(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        for (Path path : segments()) {
+            segment = Math.max(segment, sequenceOf(path));
+        }
+        open(segment + 1);
+    }
+
+    // grava e so retorna depois do fsync; chamadas concorrentes dividem o mesmo fsync (group commit)
+    public void append(Loan loan, Runnable onWritten) throws IOException {
+        ByteBuffer record = encode(loan);
+        long generation;
+        long end;
+        writeLock.lock();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            written += record.capacity();
+            generation = segment;
+            end = written;
+            onWritten.run(); // roda sob o mesmo lock do rotate: o registro e a fila andam juntos
+        } finally {
+            writeLock.unlock();
+        }
+        sync(generation, end);
+    }
+
+    // fecha o segmento atual (com fsync) e abre o proximo; devolve o segmento fechado
+    public Path rotate() throws IOException {
+        return rotate(() -> true);
+    }
+
+    // drain roda sob o lock da escrita, antes da troca; se devolver falso o segmento atual continua e devolve nulo
+    public Path rotate(BooleanSupplier drain) throws IOException {
+        writeLock.lock();
+        try {
+            if (!drain.getAsBoolean()) {
+                return null;
+            }
+            syncLock.lock();
+            try {
+                channel.force(false);
+                channel.close();
+                Path sealed = current;
+                open(segment + 1);
+                return sealed;
+            } finally {
+                syncLock.unlock();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // segmentos fechados que ainda estao em disco, do mais antigo para o mais novo
+    public List<Path> sealedSegments() throws IOException {
+        List<Path> sealed = new ArrayList<>();
+        writeLock.lock();
+        try {
+            for (Path path : segments()) {
+                if (!path.equals(current)) {
+                    sealed.add(path);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return sealed;
+    }
+
+    public void delete(Path sealed) throws IOException {
+        Files.deleteIfExists(sealed);
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeLock.lock();
+        syncLock.lock();
+        try {
+            channel.force(false);
+            channel.close();
+        } finally {
+            syncLock.unlock();
+            writeLock.unlock();
+        }
+    }
+
+    // le os registros de um segmento; um registro cortado no final (queda durante a escrita) e ignorado
+    public static List<Loan> read(Path path) throws IOException {
+        List<Loan> loans = new ArrayList<>();
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+            while (true) {
+                int length;
+                long crc;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    crc = in.readLong();
+                    if (length <= 0 || length > 1 << 20) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (crc(payload) != crc) {
+                    log.warn("Registro corrompido no journal {}, ignorando o restante do segmento", path);
+                    break;
+                }
+                loans.add(decode(payload));
+            }
+        }
+        return loans;
+    }
+
+    private void sync(long generation, long end) throws IOException {
+        syncLock.lock();
+        try {
+            // outro fsync (ou o rotate) ja cobriu este registro
+            if (generation != segment || synced >= end) {
+                return;
+            }
+            // tudo que foi escrito ate aqui entra neste fsync, inclusive registros de outras threads
+            long target = written;
+            channel.force(false);
+            synced = target;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void open(long sequence) throws IOException {
+        segment = sequence;
+        current = directory.resolve(PREFIX + String.format("%019d", sequence) + SUFFIX);
+        channel = FileChannel.open(current, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        written = channel.size();
+        synced = written;
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            stream.forEach(paths::add);
+        }
+        paths.sort(null); // o nome tem a sequencia com zeros a esquerda
+        return paths;
+    }
+
+    private static long sequenceOf(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    static ByteBuffer encode(Loan loan) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(loan.getId());
+        out.writeLong(loan.getBook().getId());
+        out.writeLong(loan.getLoanDate().toEpochDay());
+        out.writeUTF(loan.getCustomer() == null ? "" : loan.getCustomer());
+        byte[] payload = bytes.toByteArray();
+
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + Long.BYTES + payload.length);
+        record.putInt(payload.length);
+        record.putLong(crc(payload));
+        record.put(payload);
+        record.flip();
+        return record;
+    }
+
+    static Loan decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        long id = in.readLong();
+        long bookId = in.readLong();
+        LocalDate loanDate = LocalDate.ofEpochDay(in.readLong());
+        String customer = in.readUTF();
+        return Loan.builder()
+                .id(id)
+                .book(Book.builder().id(bookId).build())
+                .loanDate(loanDate)
+                .customer(customer)
+                .returned(false)
+                .openBookId(bookId)
+                .build();
+    }
+
+    private static long crc(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,269 @@
+package com.projetolivraria.libraryapi.service.journal;
+
+import com.projetolivraria.libraryapi.model.entity.Loan;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// modo opcional de criacao de emprestimos: grava no journal local (com fsync), responde na hora
+// e uma thread de fundo leva os emprestimos para a base em lotes, numa transacao por lote
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "library.loans.write-behind", name = "enabled", havingValue = "true")
+public class LoanWriteBehind {
+
+    static final String INSERT = "insert into loan (id, customer, book_id, loan_date, returned, open_book_id) values (?, ?, ?, ?, ?, ?)";
+    static final String DEAD_LETTER = "insert into loan_dead_letter (loan_id, customer, book_id, loan_date, reason, created_at) values (?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SessionFactoryImplementor sessionFactory;
+    private final IdentifierGenerator idGenerator;
+    private final Path directory;
+    private final int maxBatchSize;
+    private final long flushIntervalMs;
+
+    // emprestimos ja no journal e ainda nao gravados, por livro, para a regra de um emprestimo aberto por livro
+    private final Set<Long> pendingBooks = ConcurrentHashMap.newKeySet();
+    private final Set<Long> pendingLoans = ConcurrentHashMap.newKeySet();
+    private final List<Loan> queue = new ArrayList<>();
+    private final Deque<Unit> unflushed = new ArrayDeque<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private ScheduledExecutorService writer;
+    private LoanJournal journal;
+
+    public LoanWriteBehind(JdbcTemplate jdbcTemplate,
+                           PlatformTransactionManager transactionManager,
+                           EntityManagerFactory entityManagerFactory,
+                           @Value("${library.loans.write-behind.directory:loan-journal}") String directory,
+                           @Value("${library.loans.write-behind.max-batch-size:500}") int maxBatchSize,
+                           @Value("${library.loans.write-behind.flush-interval-ms:50}") long flushIntervalMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class).unwrap(SessionFactoryImplementor.class);
+        // o mesmo gerador (loan_seq, pooled) do modo sincrono, entao os ids nunca colidem entre os dois modos
+        this.idGenerator = sessionFactory.getMetamodel().entityPersister(Loan.class).getIdentifierGenerator();
+        this.directory = Paths.get(directory);
+        this.maxBatchSize = maxBatchSize;
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        journal = new LoanJournal(directory);
+        replay();
+        writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "loan-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+        journal.close();
+    }
+
+    public boolean isPending(Long bookId) {
+        return pendingBooks.contains(bookId);
+    }
+
+    public boolean isPendingLoan(Long loanId) {
+        return pendingLoans.contains(loanId);
+    }
+
+    // chamado com o lock do livro ja adquirido pelo LoanService
+    public Loan submit(Loan loan) {
+        loan.setId(nextId(loan));
+        pendingBooks.add(loan.getOpenBookId());
+        pendingLoans.add(loan.getId());
+        try {
+            journal.append(loan, () -> enqueue(loan));
+        } catch (IOException e) {
+            pendingBooks.remove(loan.getOpenBookId());
+            pendingLoans.remove(loan.getId());
+            throw new UncheckedIOException("Falha ao gravar o emprestimo no journal", e);
+        }
+        return loan;
+    }
+
+    // drena a fila, fecha o segmento do journal e grava os lotes pendentes na base
+    // com lock: alem da thread de fundo, a devolucao de um emprestimo ainda no journal tambem chama
+    public void flush() throws IOException {
+        flushLock.lock();
+        try {
+            List<Loan> batch = new ArrayList<>();
+            Path sealed = journal.rotate(() -> {
+                synchronized (queue) {
+                    batch.addAll(queue);
+                    queue.clear();
+                }
+                return !batch.isEmpty();
+            });
+            if (sealed != null) {
+                unflushed.addLast(new Unit(sealed, batch));
+            }
+            while (!unflushed.isEmpty()) {
+                Unit unit = unflushed.peekFirst();
+                write(unit.loans); // se a base estiver fora, lanca e o mesmo lote e tentado no proximo ciclo
+                journal.delete(unit.segment);
+                unit.loans.forEach(loan -> {
+                    pendingBooks.remove(loan.getOpenBookId());
+                    pendingLoans.remove(loan.getId());
+                });
+                unflushed.removeFirst();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // na subida grava o que ficou no journal e ainda nao chegou na base
+    void replay() throws IOException {
+        for (Path segment : journal.sealedSegments()) {
+            List<Loan> loans = LoanJournal.read(segment);
+            if (!loans.isEmpty()) {
+                Set<Long> existing = existingIds(loans);
+                List<Loan> missing = new ArrayList<>();
+                loans.stream().filter(loan -> !existing.contains(loan.getId())).forEach(missing::add);
+                log.info("Journal {}: {} emprestimos, {} reaplicados", segment.getFileName(), loans.size(), missing.size());
+                write(missing);
+            }
+            journal.delete(segment);
+        }
+    }
+
+    private void enqueue(Loan loan) {
+        boolean full;
+        synchronized (queue) {
+            queue.add(loan);
+            full = queue.size() >= maxBatchSize;
+        }
+        if (full && writer != null) {
+            try {
+                writer.execute(this::flushQuietly); // lote cheio nao espera o intervalo
+            } catch (RejectedExecutionException e) {
+                // aplicacao parando: o stop() grava o que sobrou na fila
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Falha ao gravar emprestimos do journal, nova tentativa no proximo ciclo", e);
+        }
+    }
+
+    private void write(List<Loan> loans) {
+        if (loans.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> insert(loans));
+        } catch (DataIntegrityViolationException e) {
+            // algum emprestimo conflitou (ex.: outra instancia emprestou o livro); grava um a um e separa o conflito
+            for (Loan loan : loans) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> insert(Collections.singletonList(loan)));
+                } catch (DataIntegrityViolationException conflict) {
+                    deadLetter(loan, conflict.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+    }
+
+    // o cliente ja recebeu o emprestimo como criado: o recusado fica em loan_dead_letter, nao so no log
+    // se nem isso grava, a excecao sobe e o segmento inteiro e tentado de novo no proximo ciclo
+    private void deadLetter(Loan loan, String reason) {
+        log.warn("Emprestimo {} do livro {} recusado pela base, guardado em loan_dead_letter: {}", loan.getId(), loan.getOpenBookId(), reason);
+        try {
+            jdbcTemplate.update(DEAD_LETTER, loan.getId(), loan.getCustomer(), loan.getBook().getId(), Date.valueOf(loan.getLoanDate()),
+                    reason == null || reason.length() <= 1000 ? reason : reason.substring(0, 1000), new Timestamp(System.currentTimeMillis()));
+        } catch (DuplicateKeyException e) {
+            // ja registrado numa tentativa anterior do mesmo segmento
+        }
+    }
+
+    private void insert(List<Loan> loans) {
+        jdbcTemplate.batchUpdate(INSERT, loans, loans.size(), (ps, loan) -> {
+            ps.setLong(1, loan.getId());
+            ps.setString(2, loan.getCustomer());
+            ps.setLong(3, loan.getBook().getId());
+            ps.setDate(4, Date.valueOf(loan.getLoanDate()));
+            ps.setBoolean(5, false);
+            ps.setLong(6, loan.getOpenBookId());
+        });
+    }
+
+    private Set<Long> existingIds(List<Loan> loans) {
+        Set<Long> existing = new HashSet<>();
+        for (int from = 0; from < loans.size(); from += 1000) {
+            List<Object> ids = new ArrayList<>();
+            loans.subList(from, Math.min(from + 1000, loans.size())).forEach(loan -> ids.add(loan.getId()));
+            String in = String.join(",", Collections.nCopies(ids.size(), "?"));
+            existing.addAll(jdbcTemplate.queryForList("select id from loan where id in (" + in + ")", Long.class, ids.toArray()));
+        }
+        return existing;
+    }
+
+    private Long nextId(Loan loan) {
+        // o otimizador pooled so vai na sequence a cada bloco de ids
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            return (Long) idGenerator.generate((SharedSessionContractImplementor) session, loan);
+        }
+    }
+
+    private static final class Unit {
+        final Path segment;
+        final List<Loan> loans;
+
+        Unit(Path segment, List<Loan> loans) {
+            this.segment = segment;
+            this.loans = loans;
+        }
+    }
+}
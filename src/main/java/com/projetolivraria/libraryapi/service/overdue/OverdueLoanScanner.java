@@ -0,0 +1,140 @@
+package com.projetolivraria.libraryapi.service.overdue;
+
+import com.projetolivraria.libraryapi.model.entity.LoanNotification;
+import com.projetolivraria.libraryapi.model.entity.ScanWatermark;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// procura emprestimos abertos com loan_date ate hoje - days e grava um aviso por emprestimo na outbox (loan_notification)
+// a varredura anda pelo indice (returned, loan_date, id) a partir da marca d'agua salva em scan_watermark:
+// cada execucao so le os dias que passaram do limite desde a anterior, nunca a tabela inteira
+// cada lote e uma transacao curta (insert dos avisos + marca d'agua); a leitura nao bloqueia o LoanService.save
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "library.loans.overdue", name = "enabled", havingValue = "true")
+public class OverdueLoanScanner {
+
+    static final String WATERMARK = "overdue-loans";
+
+    // indice (returned, loan_date, id): o "loan_date >= ?" redundante e o ponto de partida do indice,
+    // a comparacao de linha (loan_date, id) > (?, ?) pula o que ja foi lido no mesmo dia, e o order by
+    // comecando em returned faz o H2 reconhecer que o indice ja entrega a ordem e parar no limit
+    public static final String NEXT_BATCH = "select id, customer, book_id, loan_date from loan"
+            + " where returned = false and loan_date >= ? and loan_date <= ? and (loan_date, id) > (?, ?)"
+            + " order by returned, loan_date, id limit ?";
+    static final String INSERT = "insert into loan_notification (loan_id, customer, book_id, loan_date, created_at) values (?, ?, ?, ?, ?)";
+
+    // antes da primeira execucao a marca d'agua fica antes de qualquer emprestimo
+    private static final LocalDate START = LocalDate.of(1900, 1, 1);
+
+    private static final RowMapper<LoanNotification> ROW = (rs, row) -> LoanNotification.builder()
+            .loanId(rs.getLong("id"))
+            .customer(rs.getString("customer"))
+            .bookId(rs.getLong("book_id"))
+            .loanDate(rs.getDate("loan_date").toLocalDate())
+            .build();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int days;
+    private final int batchSize;
+    private final Duration maxRunTime;
+
+    public OverdueLoanScanner(JdbcTemplate jdbcTemplate,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${library.loans.overdue.days:14}") int days,
+                              @Value("${library.loans.overdue.batch-size:1000}") int batchSize,
+                              @Value("${library.loans.overdue.max-run-time:PT30S}") Duration maxRunTime) {
+        if (days < 1) {
+            throw new IllegalArgumentException("library.loans.overdue.days deve ser maior que zero");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.days = days;
+        this.batchSize = batchSize;
+        this.maxRunTime = maxRunTime;
+    }
+
+    @Scheduled(fixedDelayString = "${library.loans.overdue.scan-interval:PT15M}", initialDelayString = "${library.loans.overdue.scan-interval:PT15M}")
+    public void scheduledScan() {
+        try {
+            scan(LocalDate.now());
+        } catch (Exception e) {
+            log.error("Falha na varredura de emprestimos atrasados, continua da marca d'agua na proxima execucao", e);
+        }
+    }
+
+    // devolve quantos avisos foram gravados; para no tempo limite e a proxima execucao continua de onde parou
+    public int scan(LocalDate today) {
+        // so dias inteiros ja encerrados: nenhum emprestimo novo entra atras da marca d'agua
+        LocalDate cutoff = today.minusDays(days);
+        long deadline = System.nanoTime() + maxRunTime.toNanos();
+        int total = 0;
+        while (System.nanoTime() < deadline) {
+            Integer written = transactionTemplate.execute(status -> nextBatch(cutoff));
+            total += written;
+            if (written < batchSize) {
+                break;
+            }
+        }
+        if (total > 0) {
+            log.info("{} emprestimos atrasados enviados para a outbox", total);
+        }
+        return total;
+    }
+
+    private int nextBatch(LocalDate cutoff) {
+        ScanWatermark watermark = watermark();
+        Date lastDate = Date.valueOf(watermark.getLastDate());
+        List<LoanNotification> batch = jdbcTemplate.query(NEXT_BATCH, ROW,
+                lastDate, Date.valueOf(cutoff), lastDate, watermark.getLastId(), batchSize);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(INSERT, batch, batch.size(), (ps, notification) -> {
+            ps.setLong(1, notification.getLoanId());
+            ps.setString(2, notification.getCustomer());
+            ps.setLong(3, notification.getBookId());
+            ps.setDate(4, Date.valueOf(notification.getLoanDate()));
+            ps.setTimestamp(5, now);
+        });
+        LoanNotification last = batch.get(batch.size() - 1);
+        jdbcTemplate.update("update scan_watermark set last_date = ?, last_id = ? where name = ?",
+                Date.valueOf(last.getLoanDate()), last.getLoanId(), WATERMARK);
+        return batch.size();
+    }
+
+    // "for update": com mais de uma instancia da aplicacao os lotes se revezam em vez de gravar o mesmo aviso duas vezes
+    private ScanWatermark watermark() {
+        List<ScanWatermark> rows = jdbcTemplate.query("select name, last_date, last_id from scan_watermark where name = ? for update",
+                (rs, row) -> ScanWatermark.builder()
+                        .name(rs.getString("name"))
+                        .lastDate(rs.getDate("last_date").toLocalDate())
+                        .lastId(rs.getLong("last_id"))
+                        .build(),
+                WATERMARK);
+        if (!rows.isEmpty()) {
+            return rows.get(0);
+        }
+        // primeira execucao
+        ScanWatermark start = ScanWatermark.builder().name(WATERMARK).lastDate(START).lastId(0l).build();
+        jdbcTemplate.update("insert into scan_watermark (name, last_date, last_id) values (?, ?, ?)",
+                start.getName(), Date.valueOf(start.getLastDate()), start.getLastId());
+        return start;
+    }
+}
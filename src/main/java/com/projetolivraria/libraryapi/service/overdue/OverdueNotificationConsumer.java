@@ -0,0 +1,65 @@
+package com.projetolivraria.libraryapi.service.overdue;
+
+import com.projetolivraria.libraryapi.model.entity.LoanNotification;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+// consumidor local da outbox: le os avisos em lotes pela chave, entrega ao OverdueNotifier e apaga os entregues
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "library.loans.overdue", name = "enabled", havingValue = "true")
+public class OverdueNotificationConsumer {
+
+    static final String NEXT_BATCH = "select loan_id, customer, book_id, loan_date, created_at from loan_notification"
+            + " where loan_id > ? order by loan_id limit ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final OverdueNotifier notifier;
+    private final int batchSize;
+
+    public OverdueNotificationConsumer(JdbcTemplate jdbcTemplate,
+                                       OverdueNotifier notifier,
+                                       @Value("${library.loans.overdue.batch-size:1000}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.notifier = notifier;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${library.loans.overdue.drain-interval:PT10S}", initialDelayString = "${library.loans.overdue.drain-interval:PT10S}")
+    public void scheduledDrain() {
+        try {
+            drain();
+        } catch (Exception e) {
+            log.error("Falha ao entregar avisos de atraso, os nao apagados sao entregues de novo", e);
+        }
+    }
+
+    // entrega tudo que esta na outbox; devolve quantos avisos foram entregues
+    public synchronized int drain() {
+        int total = 0;
+        long lastId = 0;
+        while (true) {
+            List<LoanNotification> batch = jdbcTemplate.query(NEXT_BATCH, (rs, row) -> LoanNotification.builder()
+                    .loanId(rs.getLong("loan_id"))
+                    .customer(rs.getString("customer"))
+                    .bookId(rs.getLong("book_id"))
+                    .loanDate(rs.getDate("loan_date").toLocalDate())
+                    .createdAt(rs.getTimestamp("created_at").toLocalDateTime())
+                    .build(), lastId, batchSize);
+            if (batch.isEmpty()) {
+                return total;
+            }
+            notifier.notify(batch);
+            jdbcTemplate.batchUpdate("delete from loan_notification where loan_id = ?", batch, batch.size(),
+                    (ps, notification) -> ps.setLong(1, notification.getLoanId()));
+            total += batch.size();
+            lastId = batch.get(batch.size() - 1).getLoanId();
+        }
+    }
+}
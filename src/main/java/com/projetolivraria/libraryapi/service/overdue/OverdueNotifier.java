@@ -0,0 +1,12 @@
+package com.projetolivraria.libraryapi.service.overdue;
+
+import com.projetolivraria.libraryapi.model.entity.LoanNotification;
+
+import java.util.List;
+
+// entrega dos avisos de atraso (e-mail, fila, ...); recebe um lote por vez e pode receber o mesmo aviso de novo
+// se a aplicacao cair entre a entrega e a limpeza da outbox
+public interface OverdueNotifier {
+
+    void notify(List<LoanNotification> notifications);
+}
@@ -0,0 +1,48 @@
+-- esquema inicial; a base H2 e em memoria e sempre nasce vazia, entao o flyway aplica tudo a partir daqui
+
+create sequence book_seq start with 1 increment by 50;
+create sequence loan_seq start with 1 increment by 50;
+
+create table book (
+    id bigint not null,
+    title varchar(255),
+    author varchar(255),
+    isbn bigint,
+    version bigint,
+    constraint pk_book primary key (id),
+    constraint idx_book_isbn unique (isbn)
+);
+
+create table loan (
+    id bigint not null,
+    customer varchar(100),
+    book_id bigint,
+    loan_date date,
+    returned boolean,
+    open_book_id bigint,
+    constraint pk_loan primary key (id),
+    -- um emprestimo aberto por livro; a devolucao zera a coluna
+    constraint uk_loan_open_book unique (open_book_id),
+    constraint fk_loan_book foreign key (book_id) references book (id)
+);
+
+create index idx_loan_book_returned on loan (book_id, returned);
+create index idx_loan_returned_id on loan (returned, id);
+create index idx_loan_customer_id on loan (customer, id);
+create index idx_loan_date_id on loan (loan_date, id);
+
+create table loan_notification (
+    loan_id bigint not null,
+    customer varchar(100),
+    book_id bigint,
+    loan_date date,
+    created_at timestamp,
+    constraint pk_loan_notification primary key (loan_id)
+);
+
+create table scan_watermark (
+    name varchar(50) not null,
+    last_date date,
+    last_id bigint,
+    constraint pk_scan_watermark primary key (name)
+);
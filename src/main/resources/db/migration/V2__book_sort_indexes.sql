@@ -0,0 +1,10 @@
+-- ordenacoes aceitas pela pesquisa de livros (BookSort): cada coluna seguida do id, que desempata
+-- a ordem e atende o cursor (valor, id). o H2 so percorre indice no sentido em que foi criado,
+-- por isso cada ordenacao tem tambem o indice decrescente. isbn e unique e ordena sozinho: a ordem crescente
+-- usa o proprio idx_book_isbn
+create index idx_book_title_id on book (title, id);
+create index idx_book_title_id_desc on book (title desc, id desc);
+create index idx_book_author_id on book (author, id);
+create index idx_book_author_id_desc on book (author desc, id desc);
+create index idx_book_isbn_id_desc on book (isbn desc, id desc);
+create index idx_book_id_desc on book (id desc);
@@ -0,0 +1,8 @@
+-- pesquisa de emprestimos (LoanRepositoryImpl): a pagina vem do mais novo para o mais antigo e o H2 so percorre
+-- o indice no sentido em que foi criado, entao os indices da pesquisa terminam em "id desc"
+drop index idx_loan_returned_id;
+drop index idx_loan_customer_id;
+create index idx_loan_id_desc on loan (id desc);
+create index idx_loan_returned_id_desc on loan (returned, id desc);
+create index idx_loan_customer_id_desc on loan (customer, id desc);
+create index idx_loan_date_id_desc on loan (loan_date desc, id desc);
@@ -0,0 +1,4 @@
+-- varredura de atrasados (OverdueLoanScanner): so emprestimos abertos, na ordem (loan_date, id) a partir da marca d'agua
+-- o (loan_date, id) sozinho fazia o H2 preferir o indice de returned e ler todos os abertos a cada lote
+create index idx_loan_returned_date_id on loan (returned, loan_date, id);
+drop index idx_loan_date_id;
@@ -0,0 +1,11 @@
+-- emprestimos do write-behind (LoanWriteBehind) que o cliente ja recebeu como criados mas a base recusou
+-- (ex.: outra instancia emprestou o mesmo livro); ficam aqui para tratamento em vez de sumirem num log
+create table loan_dead_letter (
+    loan_id bigint not null,
+    customer varchar(100),
+    book_id bigint,
+    loan_date date,
+    reason varchar(1000),
+    created_at timestamp,
+    constraint pk_loan_dead_letter primary key (loan_id)
+);
@@ -2,13 +2,18 @@ package com.projetolivraria.libraryapi.api.resource;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.projetolivraria.libraryapi.api.dto.BookDTO;
+import com.projetolivraria.libraryapi.api.exception.BatchException;
 import com.projetolivraria.libraryapi.api.exception.BusinessException;
 import com.projetolivraria.libraryapi.model.entity.Book;
+import com.projetolivraria.libraryapi.model.repository.BookCursor;
+import com.projetolivraria.libraryapi.model.repository.BookFields;
 import com.projetolivraria.libraryapi.service.BookService;
+import com.projetolivraria.libraryapi.service.index.SuggestIndex;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.BDDMockito;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,7 +23,9 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
@@ -29,9 +36,13 @@ import javax.swing.text.html.Option;
 
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.function.Consumer;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -54,7 +65,7 @@ public class BookControllerTest {
     @DisplayName("Deve criar um livro com sucesso")
     public void  createBookTest() throws Exception {
          BookDTO dto = createNewBook();   // tranforma em JSOn e manda pra a requisição
-        Book savedBook = Book.builder().id(10l).author("Cesar").title("As aventuras").isbn("001").build();
+        Book savedBook = Book.builder().id(10l).author("Cesar").title("As aventuras").isbn("9780000000019").build();
         BDDMockito.given(service.save(Mockito.any(Book.class))).willReturn(savedBook);
         // recebe um objeto de qualquer tipo e transforma em JSON
         String json = new ObjectMapper().writeValueAsString(dto);
@@ -167,7 +178,7 @@ public class BookControllerTest {
     @DisplayName("Deve deletar um livro")
     public void deleteBookTest() throws Exception {
         //cenario
-        BDDMockito.given(service.getById(anyLong())).willReturn(Optional.of(Book.builder().id(1l).build()));
+        BDDMockito.given(service.deleteById(1l)).willReturn(true);
 
         // execucao
         MockHttpServletRequestBuilder request = MockMvcRequestBuilders
@@ -175,14 +186,28 @@ public class BookControllerTest {
 
         mvc.perform(request)
                 .andExpect(status().isNoContent());
+        Mockito.verify(service, Mockito.never()).getById(anyLong()); // sem leitura antes do delete
 
     }
 
+    @Test
+    @DisplayName("Deve recusar apagar um livro com historico de emprestimos")
+    public void deleteBookWithLoansTest() throws Exception {
+        //cenario
+        BDDMockito.given(service.deleteById(1l)).willThrow(new BusinessException("Livro com emprestimos"));
+
+        // execucao e verificacao
+        mvc.perform(MockMvcRequestBuilders.delete(BOOK_API.concat("/1")))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("errors", hasSize(1)))
+                .andExpect(jsonPath("errors[0]").value("Livro com emprestimos"));
+    }
+
     @Test
     @DisplayName("Deve retornar resource not found quando não encontrar o livro para deletar")
     public void deleteInexistentBookTest() throws Exception {
         //cenario
-        BDDMockito.given(service.getById(anyLong())).willReturn(Optional.empty());
+        BDDMockito.given(service.deleteById(anyLong())).willReturn(false);
 
         // execucao
         MockHttpServletRequestBuilder request = MockMvcRequestBuilders
@@ -193,6 +218,52 @@ public class BookControllerTest {
 
     }
 
+    @Test
+    @DisplayName("Deve atualizar parcialmente um livro sem le-lo antes")
+    public void patchBookTest() throws Exception {
+        //cenario
+        BDDMockito.given(service.patch(Mockito.any(Book.class), Mockito.eq(3l)))
+                .willReturn(Optional.of(Book.builder().id(1l).title("Novo titulo").version(4l).build()));
+
+        //execucao
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .patch(BOOK_API.concat("/1"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("If-Match", "\"1-3\"")
+                .content("{\"title\":\"Novo titulo\"}");
+
+        //verificacao
+        mvc.perform(request)
+                .andExpect(status().isNoContent())
+                .andExpect(header().string("ETag", "\"1-4\""));
+        ArgumentCaptor<Book> changes = ArgumentCaptor.forClass(Book.class);
+        Mockito.verify(service).patch(changes.capture(), Mockito.eq(3l));
+        assertThat(changes.getValue().getId()).isEqualTo(1l);
+        assertThat(changes.getValue().getTitle()).isEqualTo("Novo titulo");
+        assertThat(changes.getValue().getAuthor()).isNull();
+        Mockito.verify(service, Mockito.never()).getById(anyLong());
+    }
+
+    @Test
+    @DisplayName("Deve retornar 404 no patch de livro inexistente e 412 com versao antiga")
+    public void patchBookNotFoundOrStaleTest() throws Exception {
+        //cenario
+        BDDMockito.given(service.patch(Mockito.any(Book.class), Mockito.any())).willReturn(Optional.empty());
+        BDDMockito.given(service.getById(1l)).willReturn(Optional.of(Book.builder().id(1l).version(4l).build()));
+        BDDMockito.given(service.getById(2l)).willReturn(Optional.empty());
+
+        //execucao e verificacao
+        mvc.perform(MockMvcRequestBuilders.patch(BOOK_API.concat("/2"))
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"author\":\"Fulano\"}"))
+                .andExpect(status().isNotFound());
+        mvc.perform(MockMvcRequestBuilders.patch(BOOK_API.concat("/1"))
+                        .contentType(MediaType.APPLICATION_JSON).header("If-Match", "\"1-3\"").content("{\"author\":\"Fulano\"}"))
+                .andExpect(status().isPreconditionFailed());
+        mvc.perform(MockMvcRequestBuilders.patch(BOOK_API.concat("/1"))
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"isbn\":\"999\"}"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     @DisplayName("Deve atualizar um livro")
     public void updateBookTest() throws Exception {
@@ -241,6 +312,147 @@ public class BookControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    @DisplayName("Deve devolver o ETag do livro e 304 quando o cliente ja tem a versao atual")
+    public void getBookNotModifiedTest() throws Exception {
+        //cenario
+        Book book = Book.builder().id(1l).title("As aventuras").author("Cesar").isbn("001").version(3l).build();
+        BDDMockito.given(service.getById(1l)).willReturn(Optional.of(book));
+        BDDMockito.given(service.isAvailable(1l)).willReturn(true);
+
+        //execucao e verificacao
+        mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1")).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1-3\""));
+
+        mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1")).header("If-None-Match", "\"1-3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"1-3\""))
+                .andExpect(content().string(""));
+
+        mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1")).header("If-None-Match", "\"1-2\""))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("title").value("As aventuras"));
+    }
+
+    @Test
+    @DisplayName("Deve mostrar a disponibilidade no detalhe e mudar o ETag quando o livro for emprestado")
+    public void getBookAvailabilityTest() throws Exception {
+        //cenario
+        Book book = Book.builder().id(1l).title("As aventuras").author("Cesar").isbn("001").version(3l).build();
+        BDDMockito.given(service.getById(1l)).willReturn(Optional.of(book));
+        BDDMockito.given(service.isAvailable(1l)).willReturn(false);
+        BDDMockito.given(service.update(Mockito.any(Book.class))).willAnswer(invocation -> invocation.getArgument(0));
+
+        //execucao e verificacao
+        mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1")).header("If-None-Match", "\"1-3\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1-3-loaned\""))
+                .andExpect(jsonPath("available").value(false));
+
+        // o ETag do livro emprestado continua valendo como If-Match
+        mvc.perform(MockMvcRequestBuilders.put(BOOK_API.concat("/1"))
+                        .header("If-Match", "\"1-3-loaned\"")
+                        .param("title", "Novo").param("author", "Cesar"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    @DisplayName("Deve repassar o filtro de disponibilidade para a pesquisa")
+    public void findAvailableBooksTest() throws Exception {
+        //cenario
+        Book book = Book.builder().id(1l).title("As aventuras").author("Cesar").isbn("001").version(0l).build();
+        BDDMockito.given(service.find(Mockito.any(Book.class), Mockito.any(Pageable.class)))
+                .willReturn(new PageImpl<Book>(Arrays.asList(book), PageRequest.of(0, 10), 1));
+
+        //execucao
+        mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?title=aventuras&available=true&page=0&size=10")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content[0].available").doesNotExist());
+
+        //verificacao
+        Mockito.verify(service).find(Mockito.argThat(filter -> Boolean.TRUE.equals(filter.getAvailable())), Mockito.any(Pageable.class));
+    }
+
+    @Test
+    @DisplayName("Deve devolver 304 na pesquisa quando a pagina nao mudou")
+    public void findBooksNotModifiedTest() throws Exception {
+        //cenario
+        Book book = Book.builder().id(1l).title("As aventuras").author("Cesar").isbn("001").version(0l).build();
+        BDDMockito.given( service.find(Mockito.any(Book.class), Mockito.any(Pageable.class)) )
+                .willReturn( new PageImpl<Book>(Arrays.asList(book), PageRequest.of(0, 10), 1));
+
+        String etag = mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?title=aventuras&page=0&size=10")))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        //execucao e verificacao
+        mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?title=aventuras&page=0&size=10")).header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        // nova versao do livro muda o ETag da pagina
+        book.setVersion(1l);
+        mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?title=aventuras&page=0&size=10")).header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content", hasSize(1)));
+    }
+
+    @Test
+    @DisplayName("Deve retornar 412 ao atualizar com If-Match de uma versao antiga")
+    public void updateBookStaleIfMatchTest() throws Exception {
+        //cenario
+        Book book = Book.builder().id(1l).title("some title").author("some autor").isbn("321").version(2l).build();
+        BDDMockito.given(service.getById(1l)).willReturn(Optional.of(book));
+
+        //execucao
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .put(BOOK_API.concat("/1"))
+                .header("If-Match", "\"1-1\"")
+                .content(new ObjectMapper().writeValueAsString(createNewBook()))
+                .contentType(MediaType.APPLICATION_JSON);
+
+        //verificacao
+        mvc.perform(request)
+                .andExpect(status().isPreconditionFailed());
+        Mockito.verify(service, Mockito.never()).update(Mockito.any(Book.class));
+    }
+
+    @Test
+    @DisplayName("Deve atualizar com If-Match da versao atual e devolver o novo ETag")
+    public void updateBookIfMatchTest() throws Exception {
+        //cenario
+        Book book = Book.builder().id(1l).title("some title").author("some autor").isbn("321").version(2l).build();
+        BDDMockito.given(service.getById(1l)).willReturn(Optional.of(book));
+        BDDMockito.given(service.update(Mockito.any(Book.class)))
+                .willReturn(Book.builder().id(1l).title("some title").author("some autor").isbn("321").version(3l).build());
+
+        //execucao
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .put(BOOK_API.concat("/1"))
+                .header("If-Match", "\"1-2\"")
+                .content(new ObjectMapper().writeValueAsString(createNewBook()))
+                .contentType(MediaType.APPLICATION_JSON);
+
+        //verificacao
+        mvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1-3\""));
+    }
+
+    @Test
+    @DisplayName("Deve retornar 412 quando outra escrita passar entre a leitura e o update")
+    public void updateBookConcurrentWriteTest() throws Exception {
+        //cenario
+        Book book = Book.builder().id(1l).title("some title").author("some autor").isbn("321").version(2l).build();
+        BDDMockito.given(service.getById(1l)).willReturn(Optional.of(book));
+        BDDMockito.given(service.update(Mockito.any(Book.class)))
+                .willThrow(new ObjectOptimisticLockingFailureException(Book.class, 1l));
+
+        //execucao e verificacao
+        mvc.perform(MockMvcRequestBuilders.put(BOOK_API.concat("/1")).contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isPreconditionFailed());
+    }
+
     @Test
     @DisplayName("Deve filtrar livros")
     public void findBooksTest() throws Exception {
@@ -274,9 +486,312 @@ public class BookControllerTest {
         ;
     }
 
+    @Test
+    @DisplayName("Deve devolver so os campos pedidos em fields")
+    public void findBooksFieldsTest() throws Exception {
+        Book book = Book.builder().id(1l).title("As aventuras").version(0l).build();
+        BDDMockito.given( service.find(Mockito.any(Book.class), Mockito.any(Pageable.class), Mockito.any(BookFields.class)) )
+                .willReturn( new PageImpl<Book>(Arrays.asList(book), PageRequest.of(0, 10), 1));
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("?author=cesar&fields=id,title&size=10"))
+                .accept(MediaType.APPLICATION_JSON);
+
+        mvc
+                .perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content[0].id").value(1))
+                .andExpect(jsonPath("content[0].title").value("As aventuras"))
+                .andExpect(jsonPath("content[0].author").doesNotExist())
+                .andExpect(jsonPath("content[0].isbn").doesNotExist())
+                .andExpect(jsonPath("totalElements").value(1))
+        ;
+        ArgumentCaptor<BookFields> fields = ArgumentCaptor.forClass(BookFields.class);
+        Mockito.verify(service).find(Mockito.any(Book.class), Mockito.any(Pageable.class), fields.capture());
+        assertThat(fields.getValue().columns()).containsExactly("id", "title", "version");
+    }
+
+    @Test
+    @DisplayName("Deve obter um livro so com os campos pedidos")
+    public void getBookFieldsTest() throws Exception {
+        Book book = Book.builder().id(1l).isbn("001").version(2l).build();
+        BDDMockito.given( service.getById(Mockito.eq(1l), Mockito.any(BookFields.class)) ).willReturn(Optional.of(book));
+
+        mvc
+                .perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1?fields=isbn")).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1-2;isbn\""))
+                .andExpect(jsonPath("isbn").value("001"))
+                .andExpect(jsonPath("id").doesNotExist())
+        ;
+        Mockito.verify(service, Mockito.never()).getById(1l);
+
+        // a ordem dos campos nao muda o ETag, mas o ETag do livro inteiro nao vale para a projecao
+        mvc
+                .perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1?fields=title,isbn")).accept(MediaType.APPLICATION_JSON))
+                .andExpect(header().string("ETag", "\"1-2;isbn,title\""));
+        mvc
+                .perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1?fields=isbn,title")).header("If-None-Match", "\"1-2;isbn,title\""))
+                .andExpect(status().isNotModified());
+        mvc
+                .perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1?fields=isbn")).header("If-None-Match", "\"1-2\""))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    @DisplayName("Deve lançar erro ao pedir um campo que nao existe")
+    public void findBooksInvalidFieldsTest() throws Exception {
+        mvc
+                .perform(MockMvcRequestBuilders.get(BOOK_API.concat("?fields=id,senha")).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("errors[0]").value("Campo nao suportado em fields: senha"));
+    }
+
+    @Test
+    @DisplayName("Deve sugerir titulos e autores pelo prefixo digitado")
+    public void suggestTest() throws Exception {
+        //cenario
+        BDDMockito.given(service.suggest("aven", 5)).willReturn(Arrays.asList(
+                new SuggestIndex.Suggestion("As aventuras", SuggestIndex.TITLE, 2)));
+
+        //execucao e verificacao
+        mvc
+                .perform(MockMvcRequestBuilders.get(BOOK_API.concat("/suggest?q=aven&limit=5")).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].text").value("As aventuras"))
+                .andExpect(jsonPath("$[0].field").value("title"))
+                .andExpect(jsonPath("$[0].books").value(2));
+
+        mvc
+                .perform(MockMvcRequestBuilders.get(BOOK_API.concat("/suggest?q=aven&limit=50")).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        Mockito.verify(service, Mockito.never()).getById(anyLong());
+    }
+
+    @Test
+    @DisplayName("Deve lançar erro ao ordenar por coluna sem indice")
+    public void findBooksUnsupportedSortTest() throws Exception {
+        mvc
+                .perform(MockMvcRequestBuilders.get(BOOK_API.concat("?title=aventuras&sort=version")).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("errors[0]").value("Ordenacao nao suportada: version"));
+
+        mvc
+                .perform(MockMvcRequestBuilders.get(BOOK_API.concat("?sort=title&sort=author")).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        Mockito.verifyNoInteractions(service);
+    }
+
+    @Test
+    @DisplayName("Deve filtrar livros sem total quando count=false")
+    public void findBooksSliceTest() throws Exception {
+        Book book = Book.builder().id(1l).title("As aventuras").author("Cesar").isbn("001").build();
+        BDDMockito.given( service.findSlice(Mockito.any(Book.class), Mockito.any(Pageable.class)) )
+                .willReturn( new SliceImpl<Book>(Arrays.asList(book), PageRequest.of(2, 1), true));
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("?title=aventuras&count=false&page=2&size=1"))
+                .accept(MediaType.APPLICATION_JSON);
+
+        mvc
+                .perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content", Matchers.hasSize(1)))
+                .andExpect(jsonPath("number").value(2))
+                .andExpect(jsonPath("hasNext").value(true))
+                .andExpect(jsonPath("totalElements").doesNotExist())
+        ;
+        Mockito.verify(service, Mockito.never()).find(Mockito.any(Book.class), Mockito.any(Pageable.class));
+    }
+
+    @Test
+    @DisplayName("Deve filtrar livros com paginacao por cursor")
+    public void findBooksAfterCursorTest() throws Exception {
+        Book book = Book.builder().id(1l).title("As aventuras").author("Cesar").isbn("001").build();
+        BDDMockito.given( service.findAfter(Mockito.any(Book.class), Mockito.any(BookCursor.class), Mockito.eq(1)) )
+                .willReturn( new SliceImpl<Book>(Arrays.asList(book), PageRequest.of(0, 1), true));
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("?title=aventuras&after=&size=1&sort=title"))
+                .accept(MediaType.APPLICATION_JSON);
+
+        String expectedNext = BookCursor.first(org.springframework.data.domain.Sort.by("title")).next(book).encode();
+        mvc
+                .perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content", Matchers.hasSize(1)))
+                .andExpect(jsonPath("size").value(1))
+                .andExpect(jsonPath("next").value(expectedNext))
+                .andExpect(jsonPath("totalElements").doesNotExist())
+        ;
+    }
+
+    @Test
+    @DisplayName("Deve lançar erro ao receber um cursor invalido")
+    public void findBooksInvalidCursorTest() throws Exception {
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("?after=invalido"))
+                .accept(MediaType.APPLICATION_JSON);
+
+        mvc
+                .perform(request)
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("errors[0]").value("Cursor invalido"));
+    }
+
+    @Test
+    @DisplayName("Deve lançar erro ao paginar por cursor numa ordenacao que o cursor nao guarda")
+    public void findBooksAfterUnsupportedSortTest() throws Exception {
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("?after=&sort=title&sort=author"))
+                .accept(MediaType.APPLICATION_JSON);
+
+        mvc
+                .perform(request)
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("errors[0]").value(Matchers.startsWith("Ordenacao por mais de uma coluna nao suportada")));
+
+        request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("?after=&sort=title,asc,ignorecase"))
+                .accept(MediaType.APPLICATION_JSON);
+
+        mvc
+                .perform(request)
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("errors[0]").value("Ordenacao ignorando caixa nao suportada: title"));
+        Mockito.verify(service, Mockito.never()).findAfter(Mockito.any(Book.class), Mockito.any(BookCursor.class), Mockito.anyInt());
+    }
+
+    @Test
+    @DisplayName("Deve criar livros em lote")
+    public void createBatchTest() throws Exception {
+        BookDTO first = createNewBook();
+        BookDTO second = BookDTO.builder().author("Fulano").title("Memorias").isbn("9780000000026").build();
+        Book savedFirst = Book.builder().id(1l).author("Cesar").title("As aventuras").isbn("9780000000019").build();
+        Book savedSecond = Book.builder().id(2l).author("Fulano").title("Memorias").isbn("9780000000026").build();
+        BDDMockito.given(service.saveAll(Mockito.anyList())).willReturn(Arrays.asList(savedFirst, savedSecond));
+        String json = new ObjectMapper().writeValueAsString(Arrays.asList(first, second));
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .post(BOOK_API.concat("/batch"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(json);
+
+        mvc.perform(request)
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("[0].id").value(1))
+                .andExpect(jsonPath("[1].isbn").value("9780000000026"));
+    }
+
+    @Test
+    @DisplayName("Deve recusar isbn com digito verificador errado e gravar o ISBN-10 hifenizado como ISBN-13")
+    public void createBookIsbnNormalizationTest() throws Exception {
+        BDDMockito.given(service.save(Mockito.any(Book.class))).willAnswer(invocation -> invocation.getArgument(0));
+
+        mvc.perform(MockMvcRequestBuilders.post(BOOK_API).contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"title\":\"As aventuras\",\"author\":\"Cesar\",\"isbn\":\"9780000000018\"}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("errors[0]").value("Isbn invalido"));
+
+        mvc.perform(MockMvcRequestBuilders.post(BOOK_API).contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"title\":\"As aventuras\",\"author\":\"Cesar\",\"isbn\":\"0-306-40615-2\"}"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("isbn").value("9780306406157"));
+    }
+
+    @Test
+    @DisplayName("Deve apontar os itens invalidos do lote sem gravar nenhum")
+    public void createInvalidBatchTest() throws Exception {
+        BookDTO valid = createNewBook();
+        BookDTO invalid = BookDTO.builder().author("Fulano").title("Memorias").build();
+        String json = new ObjectMapper().writeValueAsString(Arrays.asList(valid, invalid));
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .post(BOOK_API.concat("/batch"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(json);
+
+        mvc.perform(request)
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("errors", hasSize(1)))
+                .andExpect(jsonPath("errors[0]").value(Matchers.startsWith("[1] isbn: ")));
+        Mockito.verify(service, Mockito.never()).saveAll(Mockito.anyList());
+    }
+
+    @Test
+    @DisplayName("Deve retornar os erros por item quando o lote tiver isbn ja cadastrado")
+    public void createBatchWithDuplicatedIsbnTest() throws Exception {
+        String json = new ObjectMapper().writeValueAsString(Arrays.asList(createNewBook()));
+        BDDMockito.given(service.saveAll(Mockito.anyList()))
+                .willThrow(new BatchException(Arrays.asList("[0] isbn: Isnb ja cadastrado")));
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .post(BOOK_API.concat("/batch"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(json);
+
+        mvc.perform(request)
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("errors", hasSize(1)))
+                .andExpect(jsonPath("errors[0]").value("[0] isbn: Isnb ja cadastrado"));
+    }
+
+    @Test
+    @DisplayName("Deve exportar o catalogo em NDJSON")
+    public void exportNdjsonTest() throws Exception {
+        givenCatalog();
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders.get(BOOK_API.concat("/export"));
+
+        mvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson;charset=UTF-8"))
+                .andExpect(content().string(
+                        "{\"id\":1,\"title\":\"As aventuras\",\"author\":\"Cesar\",\"isbn\":\"001\"}\n" +
+                        "{\"id\":2,\"title\":\"Memorias, volume 1\",\"author\":\"Fulano\",\"isbn\":\"002\"}\n"));
+    }
+
+    @Test
+    @DisplayName("Deve exportar o catalogo em CSV")
+    public void exportCsvTest() throws Exception {
+        givenCatalog();
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders.get(BOOK_API.concat("/export?format=csv"));
+
+        mvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(content().string(
+                        "id,title,author,isbn\n" +
+                        "1,As aventuras,Cesar,001\n" +
+                        "2,\"Memorias, volume 1\",Fulano,002\n"));
+    }
+
+    @Test
+    @DisplayName("Deve lançar erro para formato de exportacao desconhecido")
+    public void exportInvalidFormatTest() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/export?format=xml")))
+                .andExpect(status().isBadRequest());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void givenCatalog() {
+        BDDMockito.willAnswer(invocation -> {
+            Consumer<Book> consumer = invocation.getArgument(0);
+            consumer.accept(Book.builder().id(1l).title("As aventuras").author("Cesar").isbn("001").build());
+            consumer.accept(Book.builder().id(2l).title("Memorias, volume 1").author("Fulano").isbn("002").build());
+            return null;
+        }).given(service).export(Mockito.any(Consumer.class));
+    }
+
 
     private BookDTO createNewBook() {
-        return BookDTO.builder().author("Cesar").title("As aventuras").isbn("001").build();
+        return BookDTO.builder().author("Cesar").title("As aventuras").isbn("9780000000019").build();
     }
 
 }
@@ -6,17 +6,22 @@ import com.projetolivraria.libraryapi.api.exception.BusinessException;
 import com.projetolivraria.libraryapi.api.service.LoanService;
 import com.projetolivraria.libraryapi.model.entity.Book;
 import com.projetolivraria.libraryapi.model.entity.Loan;
+import com.projetolivraria.libraryapi.model.repository.LoanFilter;
 import com.projetolivraria.libraryapi.service.BookService;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.BDDMockito;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
@@ -25,8 +30,10 @@ import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilde
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
 import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.Optional;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -112,4 +119,77 @@ public class LoanControllerTest {
                 .andExpect( jsonPath("errors[0]").value("Book already loaned"))
         ;
     }
+
+    @Test
+    @DisplayName("Deve devolver um livro")
+    public void returnBookTest() throws Exception {
+        BDDMockito.given(laonService.returnLoan(1l)).willReturn(LoanService.ReturnResult.RETURNED);
+
+        mvc.perform(MockMvcRequestBuilders.patch(LOAN_API.concat("/1"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"returned\": true}"))
+                .andExpect(status().isNoContent());
+    }
+
+    @Test
+    @DisplayName("Deve retornar 409 ao devolver de novo e 404 para emprestimo inexistente")
+    public void returnBookAlreadyReturnedOrMissingTest() throws Exception {
+        BDDMockito.given(laonService.returnLoan(1l)).willReturn(LoanService.ReturnResult.ALREADY_RETURNED);
+        BDDMockito.given(laonService.returnLoan(2l)).willReturn(LoanService.ReturnResult.NOT_FOUND);
+
+        mvc.perform(MockMvcRequestBuilders.patch(LOAN_API.concat("/1"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"returned\": true}"))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("errors[0]").value("Emprestimo ja devolvido"));
+        mvc.perform(MockMvcRequestBuilders.patch(LOAN_API.concat("/2"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"returned\": true}"))
+                .andExpect(status().isNotFound());
+        mvc.perform(MockMvcRequestBuilders.patch(LOAN_API.concat("/2"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"returned\": false}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Deve pesquisar emprestimos pelos filtros com o livro de cada um")
+    public void findLoansTest() throws Exception {
+        Book book = Book.builder().id(1l).title("Aventuras").author("Cesar").isbn("123").build();
+        Loan loan = Loan.builder().id(7l).customer("Fulano").book(book).loanDate(LocalDate.of(2021, 5, 1)).returned(false).build();
+        BDDMockito.given(laonService.find(Mockito.any(LoanFilter.class), Mockito.any(Pageable.class)))
+                .willReturn(new SliceImpl<Loan>(Arrays.asList(loan), PageRequest.of(0, 10), true));
+
+        mvc.perform(MockMvcRequestBuilders.get(LOAN_API.concat("?isbn=123&customer=Ful&from=2021-01-01&to=2021-12-31&returned=false&size=10")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content", Matchers.hasSize(1)))
+                .andExpect(jsonPath("content[0].id").value(7))
+                .andExpect(jsonPath("content[0].loanDate").value("2021-05-01"))
+                .andExpect(jsonPath("content[0].book.title").value("Aventuras"))
+                .andExpect(jsonPath("hasNext").value(true));
+
+        ArgumentCaptor<LoanFilter> filter = ArgumentCaptor.forClass(LoanFilter.class);
+        Mockito.verify(laonService).find(filter.capture(), Mockito.any(Pageable.class));
+        assertThat(filter.getValue().getIsbn()).isEqualTo("123");
+        assertThat(filter.getValue().getCustomer()).isEqualTo("Ful");
+        assertThat(filter.getValue().getFrom()).isEqualTo(LocalDate.of(2021, 1, 1));
+        assertThat(filter.getValue().getTo()).isEqualTo(LocalDate.of(2021, 12, 31));
+        assertThat(filter.getValue().getReturned()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve pesquisar emprestimos por cursor")
+    public void findLoansAfterCursorTest() throws Exception {
+        Loan loan = Loan.builder().id(7l).customer("Fulano").book(Book.builder().id(1l).isbn("123").build()).build();
+        BDDMockito.given(laonService.findAfter(Mockito.any(LoanFilter.class), Mockito.eq(10l), Mockito.eq(1)))
+                .willReturn(new SliceImpl<Loan>(Arrays.asList(loan), PageRequest.of(0, 1), true));
+
+        mvc.perform(MockMvcRequestBuilders.get(LOAN_API.concat("?after=10&size=1")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content[0].id").value(7))
+                .andExpect(jsonPath("next").value("7"));
+        mvc.perform(MockMvcRequestBuilders.get(LOAN_API.concat("?after=abc")))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("errors[0]").value("Cursor invalido"));
+    }
 }
@@ -0,0 +1,124 @@
+package com.projetolivraria.libraryapi.api.resource;
+
+import com.projetolivraria.libraryapi.model.entity.Book;
+import com.projetolivraria.libraryapi.model.repository.BookRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "library.reactive.enabled=true")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class ReactiveBookControllerTest {
+
+    static String REACTIVE_BOOK_API = "/api/reactive/books";
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    BookRepository repository;
+
+    @AfterEach
+    public void tearDown() {
+        repository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Deve obter pelo R2DBC um livro gravado pelo JPA")
+    public void getBookTest() throws Exception {
+        //cenario
+        Book book = repository.save(Book.builder().title("As aventuras").author("Cesar").isbn("9780000000019").build());
+
+        //execucao
+        MvcResult result = mvc.perform(MockMvcRequestBuilders.get(REACTIVE_BOOK_API + "/" + book.getId()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        //verificacao
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("id").value(book.getId()))
+                .andExpect(jsonPath("title").value("As aventuras"))
+                .andExpect(jsonPath("isbn").value("9780000000019"));
+    }
+
+    @Test
+    @DisplayName("Deve retornar 404 quando o livro nao existe")
+    public void bookNotFoundTest() throws Exception {
+        MvcResult result = mvc.perform(MockMvcRequestBuilders.get(REACTIVE_BOOK_API + "/999"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DisplayName("Deve transmitir a pesquisa em ndjson, em ordem de id, a partir do cursor")
+    public void findBooksStreamTest() throws Exception {
+        //cenario
+        List<Book> books = repository.saveAll(Arrays.asList(
+                Book.builder().title("As aventuras").author("Cesar").isbn("9780000000019").build(),
+                Book.builder().title("Memorias").author("Fulano").isbn("9780000000026").build(),
+                Book.builder().title("Outras AVENTURAS").author("Cesar").isbn("9780000000033").build(),
+                Book.builder().title("100% aventura").author("Cesar").isbn("9780000000040").build()));
+
+        //execucao
+        MvcResult result = mvc.perform(MockMvcRequestBuilders.get(REACTIVE_BOOK_API + "?title=aventura&author=ces&after=" + books.get(0).getId())
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        //verificacao
+        String body = mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        String[] lines = body.trim().split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(lines[0]).contains("\"isbn\":\"9780000000033\"");
+        assertThat(lines[1]).contains("\"isbn\":\"9780000000040\"");
+    }
+
+    @Test
+    @DisplayName("Deve tratar % e _ da pesquisa como texto")
+    public void findBooksEscapedTest() throws Exception {
+        repository.saveAll(Arrays.asList(
+                Book.builder().title("100% aventura").author("Cesar").isbn("9780000000019").build(),
+                Book.builder().title("1000 aventuras").author("Cesar").isbn("9780000000026").build()));
+
+        MvcResult result = mvc.perform(MockMvcRequestBuilders.get(REACTIVE_BOOK_API).param("title", "0%").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mvc.perform(asyncDispatch(result)).andReturn().getResponse().getContentAsString();
+        assertThat(body.trim().split("\n")).hasSize(1);
+        assertThat(body).contains("\"isbn\":\"9780000000019\"");
+    }
+
+    @Test
+    @DisplayName("Deve recusar com 400 um limit fora de 1 a 1000")
+    public void findBooksLimitOutOfRangeTest() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.get(REACTIVE_BOOK_API).param("limit", "1001").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isBadRequest());
+        mvc.perform(MockMvcRequestBuilders.get(REACTIVE_BOOK_API).param("limit", "0").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,31 @@
+package com.projetolivraria.libraryapi.config;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class VirtualThreadsConfigurationTest {
+
+    @Test
+    @DisplayName("Deve executar em thread virtual no JDK 21 ou falhar na subida com mensagem clara")
+    public void virtualThreadExecutorTest() throws Exception {
+        if (Runtime.version().feature() < 21) {
+            assertThatThrownBy(VirtualThreadsConfiguration::newVirtualThreadPerTaskExecutor)
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("JDK 21");
+            return;
+        }
+        ExecutorService executor = VirtualThreadsConfiguration.newVirtualThreadPerTaskExecutor();
+        try {
+            Future<Boolean> virtual = executor.submit(() -> (Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()));
+            assertThat(virtual.get()).isTrue();
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
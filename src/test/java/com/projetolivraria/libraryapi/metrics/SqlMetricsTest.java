@@ -0,0 +1,95 @@
+package com.projetolivraria.libraryapi.metrics;
+
+import com.projetolivraria.libraryapi.model.entity.Book;
+import com.projetolivraria.libraryapi.model.repository.BookRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "library.sql-statistics.detailed.enabled=true")
+@AutoConfigureMockMvc
+@AutoConfigureMetrics
+@ActiveProfiles("test")
+public class SqlMetricsTest {
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    MeterRegistry registry;
+
+    @Autowired
+    BookRepository repository;
+
+    @AfterEach
+    public void tearDown() {
+        repository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Deve contar os comandos e as linhas de uma pesquisa paginada pela base")
+    public void findStatementsTest() throws Exception {
+        //cenario
+        repository.saveAll(Arrays.asList(book("001"), book("002"), book("003")));
+
+        DistributionSummary statements = summary("library.request.sql.statements");
+        DistributionSummary rows = summary("library.request.sql.rows");
+        long requests = statements.count();
+        double statementsBefore = statements.totalAmount();
+        double rowsBefore = rows.totalAmount();
+
+        //execucao: termo curto vai para a consulta na base (pagina + count)
+        mvc.perform(MockMvcRequestBuilders.get("/api/books?title=a&page=0&size=2"))
+                .andExpect(status().isOk());
+
+        //verificacao
+        assertThat(statements.count()).isEqualTo(requests + 1);
+        assertThat(statements.totalAmount() - statementsBefore).isEqualTo(2);
+        assertThat(rows.totalAmount() - rowsBefore).isEqualTo(4); // 2 livros da pagina + 1 a mais + a linha do count
+
+        //execucao: mesmo filtro, o total sai do cache
+        mvc.perform(MockMvcRequestBuilders.get("/api/books?title=A&page=0&size=2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("totalElements").value(3));
+
+        assertThat(statements.totalAmount() - statementsBefore).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Deve publicar histogramas de latencia dos endpoints e do BookService")
+    public void latencyHistogramsTest() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.get("/api/books?title=a"))
+                .andExpect(status().isOk());
+
+        assertThat(registry.get("library.book.service").tag("method", "find").timer().count()).isPositive();
+        mvc.perform(MockMvcRequestBuilders.get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(org.hamcrest.Matchers.containsString("http_server_requests_seconds_bucket")))
+                .andExpect(content().string(org.hamcrest.Matchers.containsString("library_book_service_seconds_bucket")))
+                .andExpect(content().string(org.hamcrest.Matchers.containsString("hibernate_statements_total")));
+    }
+
+    private DistributionSummary summary(String name) {
+        return DistributionSummary.builder(name).tag("method", "GET").tag("uri", "/api/books").register(registry);
+    }
+
+    private Book book(String isbn) {
+        return Book.builder().title("As aventuras " + isbn).author("Cesar").isbn(isbn).build();
+    }
+}
@@ -0,0 +1,63 @@
+package com.projetolivraria.libraryapi.metrics;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SqlStatisticsDataSourcePostProcessorTest {
+
+    @Test
+    @DisplayName("Deve contar so os comandos, sem proxy nos ResultSets, fora do modo detalhado")
+    public void statementsOnlyTest() throws Exception {
+        //cenario
+        SqlStatistics statistics = new SqlStatistics(false);
+
+        //execucao
+        boolean proxied = readOneRow(statistics);
+
+        //verificacao
+        assertThat(proxied).isFalse();
+        assertThat(statistics.end().getStatements()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve contar as linhas lidas no modo detalhado")
+    public void detailedTest() throws Exception {
+        //cenario
+        SqlStatistics statistics = new SqlStatistics(true);
+
+        //execucao
+        boolean proxied = readOneRow(statistics);
+
+        //verificacao
+        assertThat(proxied).isTrue();
+        SqlStatistics.Counts counts = statistics.end();
+        assertThat(counts.getStatements()).isEqualTo(1);
+        assertThat(counts.getRows()).isEqualTo(1);
+    }
+
+    private boolean readOneRow(SqlStatistics statistics) throws Exception {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:sql-statistics");
+        DefaultListableBeanFactory beans = new DefaultListableBeanFactory();
+        beans.registerSingleton("sqlStatistics", statistics);
+        DataSource dataSource = (DataSource) new SqlStatisticsDataSourcePostProcessor(beans.getBeanProvider(SqlStatistics.class))
+                .postProcessAfterInitialization(h2, "dataSource");
+
+        statistics.begin();
+        try (Connection connection = dataSource.getConnection();
+             ResultSet resultSet = connection.createStatement().executeQuery("select 1")) {
+            while (resultSet.next()) {
+            }
+            return Proxy.isProxyClass(resultSet.getClass());
+        }
+    }
+}
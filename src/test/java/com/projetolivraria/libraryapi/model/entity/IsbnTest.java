@@ -0,0 +1,44 @@
+package com.projetolivraria.libraryapi.model.entity;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IsbnTest {
+
+    @Test
+    @DisplayName("Deve converter ISBN-10 para ISBN-13 e aceitar hifens")
+    public void toIsbn13Test() {
+        assertThat(Isbn.toIsbn13("0-306-40615-2")).isEqualTo("9780306406157");
+        assertThat(Isbn.toIsbn13("080442957X")).isEqualTo("9780804429573");
+        assertThat(Isbn.toIsbn13("978-0-306-40615-7")).isEqualTo("9780306406157");
+    }
+
+    @Test
+    @DisplayName("Deve recusar digito verificador errado e valores que nao sao isbn")
+    public void invalidIsbnTest() {
+        assertThat(Isbn.isValid("9780306406158")).isFalse();
+        assertThat(Isbn.isValid("0306406153")).isFalse();
+        assertThat(Isbn.isValid("1230306406157")).isFalse();
+        assertThat(Isbn.isValid("123")).isFalse();
+        assertThat(Isbn.isValid(null)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve manter o termo parcial so sem os separadores")
+    public void normalizePartialTest() {
+        assertThat(Isbn.normalize("978-0306")).isEqualTo("9780306");
+        assertThat(Isbn.normalize("0-306-40615-2")).isEqualTo("9780306406157");
+    }
+
+    @Test
+    @DisplayName("Deve gravar o isbn como numero e ler de volta os mesmos digitos")
+    public void converterTest() {
+        IsbnConverter converter = new IsbnConverter();
+
+        assertThat(converter.convertToDatabaseColumn("9780306406157")).isEqualTo(9780306406157l);
+        assertThat(converter.convertToEntityAttribute(9780306406157l)).isEqualTo("9780306406157");
+        assertThat(IsbnConverter.fits("978-0306")).isFalse();
+    }
+}
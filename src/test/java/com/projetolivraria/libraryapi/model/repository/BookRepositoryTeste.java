@@ -2,16 +2,27 @@ package com.projetolivraria.libraryapi.model.repository;
 
 
 import com.projetolivraria.libraryapi.model.entity.Book;
+import com.projetolivraria.libraryapi.model.entity.Loan;
+import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 
@@ -59,6 +70,25 @@ public class BookRepositoryTeste {
         assertThat(exists).isFalse();
     }
 
+    @Test
+    @DisplayName("Deve incrementar a versao e recusar update de versao antiga")
+    public void optimisticVersionTest() {
+        //cenario
+        Book book = entityManager.persistFlushFind(createNewBook("123"));
+        Book stale = book.toBuilder().title("Velho").build();
+        entityManager.detach(book);
+
+        //execucao
+        Book updated = repository.saveAndFlush(book.toBuilder().title("Novo").build());
+
+        //verificacao
+        assertThat(stale.getVersion()).isEqualTo(0l);
+        assertThat(updated.getVersion()).isEqualTo(1l);
+        entityManager.detach(updated);
+        Assertions.assertThatThrownBy(() -> repository.saveAndFlush(stale))
+                .isInstanceOf(ObjectOptimisticLockingFailureException.class);
+    }
+
     @Test
     @DisplayName("Deve obter um livro por id")
     public void findbyIdTest(){
@@ -101,4 +131,203 @@ public class BookRepositoryTeste {
     }
 
 
+    @Test
+    @DisplayName("Deve atualizar so as colunas informadas e respeitar a versao esperada")
+    public void updateFieldsTest() {
+        //cenario
+        Book book = entityManager.persistFlushFind(createNewBook("123"));
+        entityManager.clear();
+
+        //execucao
+        int stale = repository.updateFields(Book.builder().id(book.getId()).title("Novo").build(), 5l);
+        int updated = repository.updateFields(Book.builder().id(book.getId()).title("Novo").build(), 0l);
+        int missing = repository.updateFields(Book.builder().id(-1l).author("Ninguem").build(), null);
+
+        //verificacao
+        Book found = entityManager.find(Book.class, book.getId());
+        assertThat(stale).isEqualTo(0);
+        assertThat(updated).isEqualTo(1);
+        assertThat(missing).isEqualTo(0);
+        assertThat(found.getTitle()).isEqualTo("Novo");
+        assertThat(found.getAuthor()).isEqualTo("Cesar");
+        assertThat(found.getVersion()).isEqualTo(1l);
+    }
+
+    @Test
+    @DisplayName("Deve apagar pelo id com um unico delete")
+    public void deleteDirectlyByIdTest() {
+        Book book = entityManager.persistFlushFind(createNewBook("123"));
+        entityManager.clear();
+
+        assertThat(repository.deleteDirectlyById(book.getId())).isEqualTo(1);
+        assertThat(repository.deleteDirectlyById(book.getId())).isEqualTo(0);
+        assertThat(entityManager.find(Book.class, book.getId())).isNull();
+    }
+
+    @Test
+    @DisplayName("Deve barrar pela fk o delete de um livro com emprestimo ja devolvido")
+    public void deleteDirectlyByIdWithLoansTest() {
+        Book book = entityManager.persist(createNewBook("123"));
+        entityManager.persist(Loan.builder().book(book).customer("Maria").loanDate(LocalDate.now()).returned(true).build());
+        entityManager.flush();
+        entityManager.clear();
+
+        Throwable exception = Assertions.catchThrowable(() -> repository.deleteDirectlyById(book.getId()));
+
+        assertThat(exception).isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    @Test
+    @DisplayName("Deve paginar por cursor sem repetir nem pular livros")
+    public void findAfterCursorTest() {
+        // cenario
+        entityManager.persist(Book.builder().title("Bravo").author("Cesar").isbn("1").build());
+        entityManager.persist(Book.builder().title("Alfa").author("Cesar").isbn("2").build());
+        entityManager.persist(Book.builder().title("Bravo").author("Fulano").isbn("3").build());
+        entityManager.persist(Book.builder().title("Charlie").author("Cesar").isbn("4").build());
+        Book filter = Book.builder().author("CES").build();
+
+        // execucao
+        BookCursor cursor = BookCursor.first(Sort.by("title"));
+        List<Book> first = repository.findAfter(filter, cursor, 2);
+        cursor = BookCursor.decode(cursor.next(first.get(1)).encode());
+        List<Book> second = repository.findAfter(filter, cursor, 2);
+
+        // verificacao
+        assertThat(first.get(0).getIsbn()).isEqualTo("2");
+        assertThat(first.get(1).getIsbn()).isEqualTo("1");
+        assertThat(second.size()).isEqualTo(1);
+        assertThat(second.get(0).getIsbn()).isEqualTo("4");
+    }
+
+    @Test
+    @DisplayName("Deve paginar por cursor em ordem decrescente quando a pagina termina no meio de um mesmo valor")
+    public void findAfterCursorSameValueTest() {
+        // cenario
+        entityManager.persist(Book.builder().title("Alfa").author("Cesar").isbn("1").build());
+        entityManager.persist(Book.builder().title("Bravo").author("Cesar").isbn("2").build());
+        entityManager.persist(Book.builder().title("Bravo").author("Cesar").isbn("3").build());
+        entityManager.persist(Book.builder().title("Bravo").author("Cesar").isbn("4").build());
+        entityManager.persist(Book.builder().title("Charlie").author("Cesar").isbn("5").build());
+        Book filter = Book.builder().build();
+
+        // execucao
+        BookCursor cursor = BookCursor.first(Sort.by(Sort.Direction.DESC, "title"));
+        List<Book> first = repository.findAfter(filter, cursor, 3);
+        cursor = BookCursor.decode(cursor.next(first.get(2)).encode());
+        List<Book> second = repository.findAfter(filter, cursor, 3);
+
+        // verificacao
+        assertThat(first.stream().map(Book::getIsbn).collect(Collectors.toList())).isEqualTo(Arrays.asList("5", "4", "3"));
+        assertThat(second.stream().map(Book::getIsbn).collect(Collectors.toList())).isEqualTo(Arrays.asList("2", "1"));
+    }
+
+    @Test
+    @DisplayName("Deve buscar a pagina com uma linha a mais e contar pelo mesmo criterio")
+    public void findSliceAndCountMatchingTest() {
+        // cenario
+        entityManager.persist(Book.builder().title("Bravo").author("Cesar").isbn("1").build());
+        entityManager.persist(Book.builder().title("Alfa").author("Cesar").isbn("2").build());
+        entityManager.persist(Book.builder().title("Charlie").author("Fulano").isbn("3").build());
+        entityManager.persist(Book.builder().title("Delta").author("Cesar").isbn("4").build());
+        Book filter = Book.builder().author("ces").build();
+
+        // execucao
+        List<Book> first = repository.findSlice(filter, PageRequest.of(0, 2, Sort.by("title")));
+        List<Book> last = repository.findSlice(filter, PageRequest.of(1, 2, Sort.by("title")));
+        long count = repository.countMatching(filter);
+
+        // verificacao
+        assertThat(first.stream().map(Book::getIsbn).collect(Collectors.toList())).isEqualTo(Arrays.asList("2", "1", "4"));
+        assertThat(last.stream().map(Book::getIsbn).collect(Collectors.toList())).isEqualTo(Arrays.asList("4"));
+        assertThat(count).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Deve filtrar pela disponibilidade na base e achar o emprestimo aberto do livro")
+    public void findSliceByAvailabilityTest() {
+        // cenario
+        Book loaned = entityManager.persist(Book.builder().title("Alfa").author("Cesar").isbn("1").build());
+        Book free = entityManager.persist(Book.builder().title("Bravo").author("Cesar").isbn("2").build());
+        entityManager.persist(Loan.builder().book(loaned).customer("Fulano").loanDate(LocalDate.now()).returned(false).openBookId(loaned.getId()).build());
+
+        // execucao
+        List<Book> available = repository.findSlice(Book.builder().author("ces").available(true).build(), PageRequest.of(0, 10));
+        long loanedCount = repository.countMatching(Book.builder().available(false).build());
+
+        // verificacao
+        assertThat(available.size()).isEqualTo(1);
+        assertThat(available.get(0).getId()).isEqualTo(free.getId());
+        assertThat(loanedCount).isEqualTo(1);
+        assertThat(repository.hasOpenLoan(loaned.getId())).isTrue();
+        assertThat(repository.hasOpenLoan(free.getId())).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve buscar o isbn completo pela igualdade e o parcial pelo texto da coluna numerica")
+    public void findSliceByIsbnTest() {
+        // cenario
+        entityManager.persist(Book.builder().title("Alfa").author("Cesar").isbn("9780306406157").build());
+        entityManager.persist(Book.builder().title("Bravo").author("Cesar").isbn("9780000000019").build());
+
+        // execucao
+        List<Book> full = repository.findSlice(Book.builder().isbn("9780306406157").build(), PageRequest.of(0, 10));
+        List<Book> partial = repository.findSlice(Book.builder().isbn("30640").build(), PageRequest.of(0, 10));
+
+        // verificacao
+        assertThat(full.size()).isEqualTo(1);
+        assertThat(partial.size()).isEqualTo(1);
+        assertThat(partial.get(0).getIsbn()).isEqualTo("9780306406157");
+        assertThat(repository.findByIsbn("9780000000019").isPresent()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve ler so as colunas pedidas, sem carregar a entidade")
+    public void findFieldsTest() {
+        // cenario
+        Book book = entityManager.persistFlushFind(Book.builder().title("Alfa").author("Cesar").isbn("1").build());
+        entityManager.persist(Book.builder().title("Bravo").author("Fulano").isbn("2").build());
+        BookFields fields = BookFields.parse("title");
+
+        // execucao
+        List<Book> found = repository.findFields(Book.builder().author("CES").build(), PageRequest.of(0, 10), fields);
+        List<Book> byId = repository.findFieldsById(Arrays.asList(book.getId()), fields);
+
+        // verificacao
+        assertThat(found.size()).isEqualTo(1);
+        assertThat(found.get(0).getTitle()).isEqualTo("Alfa");
+        assertThat(found.get(0).getId()).isEqualTo(book.getId());
+        assertThat(found.get(0).getVersion()).isEqualTo(0l);
+        assertThat(found.get(0).getAuthor()).isNull();
+        assertThat(entityManager.getEntityManager().contains(found.get(0))).isFalse();
+        assertThat(byId.get(0).getTitle()).isEqualTo("Alfa");
+    }
+
+    @Test
+    @DisplayName("Deve inserir um lote e encontrar os isbns ja cadastrados")
+    public void insertAllAndFindExistingIsbnsTest() {
+        List<Book> books = Arrays.asList(createNewBook("1"), createNewBook("2"), createNewBook("3"));
+
+        repository.insertAll(books);
+        List<String> existing = repository.findExistingIsbns(Arrays.asList("2", "3", "4"));
+
+        assertThat(books.get(2).getId()).isNotNull();
+        assertThat(existing.size()).isEqualTo(2);
+        assertThat(existing.contains("4")).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve percorrer todos os livros por stream em ordem de id")
+    public void streamAllTest() {
+        entityManager.persist(createNewBook("1"));
+        entityManager.persist(createNewBook("2"));
+
+        List<String> isbns;
+        try (Stream<Book> books = repository.streamAll()) {
+            isbns = books.map(Book::getIsbn).collect(Collectors.toList());
+        }
+
+        assertThat(isbns).isEqualTo(Arrays.asList("1", "2"));
+    }
+
 }
@@ -0,0 +1,172 @@
+package com.projetolivraria.libraryapi.model.repository;
+
+import com.projetolivraria.libraryapi.model.entity.Book;
+import com.projetolivraria.libraryapi.model.entity.Loan;
+import org.assertj.core.api.Assertions;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+public class LoanRepositoryTeste {
+
+    @Autowired
+    TestEntityManager entityManager;
+
+    @Autowired
+    LoanRepository repository;
+
+    @Test
+    @DisplayName("Deve verificar se existe emprestimo aberto para o livro")
+    public void existsOpenLoanTest() {
+        // cenario
+        Book book = createBook();
+        entityManager.persist(createOpenLoan(book));
+
+        // execucao
+        boolean exists = repository.existsByOpenBookId(book.getId());
+
+        // verificacao
+        assertThat(exists).isTrue();
+        assertThat(repository.existsByOpenBookId(book.getId() + 1)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Nao deve permitir dois emprestimos abertos para o mesmo livro")
+    public void uniqueOpenLoanTest() {
+        Book book = createBook();
+        repository.saveAndFlush(createOpenLoan(book));
+
+        Throwable exception = Assertions.catchThrowable(() -> repository.saveAndFlush(createOpenLoan(book)));
+
+        assertThat(exception).isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    @Test
+    @DisplayName("Deve devolver o emprestimo uma unica vez e liberar o livro")
+    public void markReturnedTest() {
+        // cenario
+        Book book = createBook();
+        Loan loan = entityManager.persistFlushFind(createOpenLoan(book));
+        entityManager.clear();
+
+        // execucao
+        Optional<Long> first = repository.markReturned(loan.getId());
+        Optional<Long> second = repository.markReturned(loan.getId());
+
+        // verificacao
+        assertThat(first).contains(book.getId());
+        assertThat(second).isEmpty();
+        Loan found = entityManager.find(Loan.class, loan.getId());
+        assertThat(found.getReturned()).isTrue();
+        assertThat(found.getOpenBookId()).isNull();
+        assertThat(repository.existsByOpenBookId(book.getId())).isFalse();
+        repository.saveAndFlush(createOpenLoan(book)); // o livro pode ser emprestado de novo
+    }
+
+    @Test
+    @DisplayName("Deve achar o livro pela linha quando o driver nao devolve book_id como chave gerada")
+    public void markReturnedWithoutGeneratedKeyTest() {
+        // cenario
+        Book book = createBook();
+        Loan loan = entityManager.persistFlushFind(createOpenLoan(book));
+        entityManager.clear();
+
+        // execucao: conexao que ignora as colunas pedidas, como um driver que so devolve a chave primaria
+        Optional<Long> returned = entityManager.getEntityManager().unwrap(Session.class)
+                .doReturningWork(connection -> LoanRepositoryImpl.markReturned(withoutGeneratedKeys(connection), loan.getId()));
+
+        // verificacao
+        assertThat(returned).contains(book.getId());
+        assertThat(entityManager.find(Loan.class, loan.getId()).getReturned()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve pesquisar emprestimos pelos filtros, do mais novo para o mais antigo, com o livro ja carregado")
+    public void searchTest() {
+        // cenario
+        Book first = createBook();
+        Book second = entityManager.persist(Book.builder().title("Memorias").author("Fulano").isbn("456").build());
+        Loan old = entityManager.persist(Loan.builder().book(first).customer("Maria").loanDate(LocalDate.of(2021, 1, 10)).returned(true).build());
+        Loan open = entityManager.persist(Loan.builder().book(first).customer("Mario").loanDate(LocalDate.of(2021, 2, 10)).returned(false).openBookId(first.getId()).build());
+        Loan other = entityManager.persist(Loan.builder().book(second).customer("Joao").loanDate(LocalDate.of(2021, 3, 10)).returned(false).openBookId(second.getId()).build());
+        entityManager.flush();
+        entityManager.clear();
+
+        // execucao
+        List<Loan> all = repository.search(LoanFilter.builder().build(), null, 0, 10);
+        List<Loan> byIsbn = repository.search(LoanFilter.builder().isbn("123").build(), null, 0, 10);
+        List<Loan> openByCustomer = repository.search(LoanFilter.builder().customer("Mar").returned(false).build(), null, 0, 10);
+        List<Loan> byDate = repository.search(LoanFilter.builder().from(LocalDate.of(2021, 1, 1)).to(LocalDate.of(2021, 2, 28)).build(), null, 0, 10);
+        List<Loan> afterCursor = repository.search(LoanFilter.builder().build(), other.getId(), 0, 1);
+        List<Loan> byCustomer = repository.search(LoanFilter.builder().customer("Mar").build(), null, 0, 10);
+        List<Loan> byCustomerAfter = repository.search(LoanFilter.builder().customer("Mar").build(), old.getId(), 0, 10);
+        List<Loan> byDateAfter = repository.search(LoanFilter.builder().to(LocalDate.of(2021, 3, 31)).build(), open.getId(), 0, 10);
+
+        // verificacao
+        assertThat(ids(all)).isEqualTo(Arrays.asList(other.getId(), open.getId(), old.getId()));
+        assertThat(Hibernate.isInitialized(all.get(0).getBook())).isTrue();
+        assertThat(all.get(0).getBook().getIsbn()).isEqualTo("456");
+        assertThat(ids(byIsbn)).isEqualTo(Arrays.asList(open.getId(), old.getId()));
+        assertThat(ids(openByCustomer)).isEqualTo(Arrays.asList(open.getId()));
+        assertThat(ids(byDate)).isEqualTo(Arrays.asList(open.getId(), old.getId()));
+        assertThat(ids(afterCursor)).isEqualTo(Arrays.asList(open.getId()));
+        // prefixo do cliente ordena pelo cliente e depois do mais novo; datas, da data mais recente
+        assertThat(ids(byCustomer)).isEqualTo(Arrays.asList(old.getId(), open.getId()));
+        assertThat(ids(byCustomerAfter)).isEqualTo(Arrays.asList(open.getId()));
+        assertThat(ids(byDateAfter)).isEqualTo(Arrays.asList(old.getId()));
+    }
+
+    private static List<Long> ids(List<Loan> loans) {
+        return loans.stream().map(Loan::getId).collect(Collectors.toList());
+    }
+
+    private Book createBook() {
+        return entityManager.persist(Book.builder().title("Aventuras").author("Cesar").isbn("123").build());
+    }
+
+    private Loan createOpenLoan(Book book) {
+        return Loan.builder()
+                .book(book)
+                .customer("Fulano")
+                .loanDate(LocalDate.now())
+                .returned(false)
+                .openBookId(book.getId())
+                .build();
+    }
+
+    private static Connection withoutGeneratedKeys(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if ("prepareStatement".equals(method.getName()) && args.length == 2 && args[1] instanceof String[]) {
+                        return connection.prepareStatement((String) args[0]);
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+}
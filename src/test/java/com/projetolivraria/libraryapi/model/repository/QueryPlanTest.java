@@ -0,0 +1,333 @@
+package com.projetolivraria.libraryapi.model.repository;
+
+import com.projetolivraria.libraryapi.model.entity.Book;
+import com.projetolivraria.libraryapi.model.entity.Loan;
+import com.projetolivraria.libraryapi.service.BookService;
+import com.projetolivraria.libraryapi.service.impl.BookServiceImp;
+import com.projetolivraria.libraryapi.service.index.AvailabilityIndex;
+import com.projetolivraria.libraryapi.service.index.BookCache;
+import com.projetolivraria.libraryapi.service.index.BookCountCache;
+import com.projetolivraria.libraryapi.service.index.IsbnBloomFilter;
+import com.projetolivraria.libraryapi.service.index.IsbnIndex;
+import com.projetolivraria.libraryapi.service.index.SuggestIndex;
+import com.projetolivraria.libraryapi.service.index.TrigramIndex;
+import com.projetolivraria.libraryapi.service.overdue.OverdueLoanScanner;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.sql.Date;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// roda EXPLAIN ANALYZE em cada SQL que o BookRepository, o BookServiceImp e o LoanRepository geram e falha se algum
+// ler a tabela inteira ou mais linhas que MAX_ROWS_READ numa tabela (indice inteiro seguido de ordenacao tambem conta);
+// as tabelas tem bem mais linhas que esse limite, entao so passa quem le pelo indice ate a pagina
+// fica de fora de proposito o "contem" de title/author (like '%termo%'): nenhum indice atende curinga no inicio,
+// e com o TrigramIndex carregado essa pesquisa nem chega na base
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+@Import(QueryPlanTest.CaptureConfiguration.class)
+public class QueryPlanTest {
+
+    static final int BOOKS = 1000;
+    static final int LOANS = 3000;
+    static final long FIRST_LOAN = 1_000_000;
+    // linhas lidas por tabela: a pagina 3 de 20 com uma linha a mais le 61 emprestimos e faz 61 buscas de livro
+    // pela chave, que o H2 conta em dobro (121); qualquer leitura do historico ou do catalogo passa muito disso
+    static final int MAX_ROWS_READ = 130;
+
+    private static final Pattern SCAN_COUNT = Pattern.compile("scanCount: (\\d+)");
+
+    @Autowired
+    TestEntityManager entityManager;
+
+    @Autowired
+    BookRepository repository;
+
+    @Autowired
+    LoanRepository loanRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    Capture capture;
+
+    List<Book> books;
+
+    @BeforeEach
+    public void setUp() {
+        books = new ArrayList<>();
+        for (int i = 0; i < BOOKS; i++) {
+            books.add(entityManager.persist(Book.builder().title("Titulo " + i).author("Autor " + (i % 30)).isbn(isbn(i)).build()));
+        }
+        entityManager.flush();
+        entityManager.clear();
+        // emprestimos direto pelo jdbc, 10 por dia, so da primeira metade dos livros (a outra pode ser apagada);
+        // os 50 primeiros de id multiplo de 10 ainda estao abertos
+        List<Object[]> loans = new ArrayList<>();
+        for (int i = 0; i < LOANS; i++) {
+            Book book = books.get(i % (BOOKS / 2));
+            boolean open = i % 10 == 0 && i < BOOKS / 2;
+            loans.add(new Object[]{FIRST_LOAN + i, "cliente" + (i % 20), book.getId(),
+                    Date.valueOf(LocalDate.of(2020, 1, 1).plusDays(i / 10)), !open, open ? book.getId() : null});
+        }
+        jdbcTemplate.batchUpdate("insert into loan (id, customer, book_id, loan_date, returned, open_book_id) values (?, ?, ?, ?, ?, ?)", loans);
+    }
+
+    @Test
+    @DisplayName("Nenhuma consulta do BookRepository deve varrer a tabela de livros")
+    public void bookRepositoryPlansTest() {
+        Book book = books.get(10);
+        List<String> scans = new ArrayList<>();
+
+        scans.addAll(scans("existsByIsbn", () -> repository.existsByIsbn(book.getIsbn())));
+        scans.addAll(scans("findByIsbn", () -> repository.findByIsbn(book.getIsbn())));
+        scans.addAll(scans("findExistingIsbns", () -> repository.findExistingIsbns(Arrays.asList(book.getIsbn(), isbn(BOOKS + 1)))));
+        scans.addAll(scans("findById", () -> repository.findById(book.getId())));
+        scans.addAll(scans("findAllById", () -> repository.findAllById(Arrays.asList(book.getId(), books.get(20).getId()))));
+        scans.addAll(scans("findFieldsById", () -> repository.findFieldsById(Arrays.asList(book.getId()), BookFields.parse("title"))));
+        scans.addAll(scans("findByIdGreaterThan", () -> repository.findByIdGreaterThan(book.getId(), PageRequest.of(0, 50, Sort.by("id")))));
+        scans.addAll(scans("hasOpenLoan", () -> repository.hasOpenLoan(book.getId())));
+        scans.addAll(scans("updateFields", () -> repository.updateFields(Book.builder().id(book.getId()).title("Novo").build(), 0l)));
+        scans.addAll(scans("deleteDirectlyById", () -> repository.deleteDirectlyById(books.get(BOOKS - 1).getId())));
+        scans.addAll(scans("findSlice isbn", () -> repository.findSlice(Book.builder().isbn(book.getIsbn()).build(), PageRequest.of(0, 20))));
+        for (String property : BookSort.PROPERTIES) {
+            for (Sort.Direction direction : Sort.Direction.values()) {
+                PageRequest page = PageRequest.of(2, 20, Sort.by(direction, property));
+                scans.addAll(scans("findSlice sort " + property + " " + direction, () -> repository.findSlice(Book.builder().build(), page)));
+                BookCursor first = BookCursor.first(page.getSort());
+                scans.addAll(scans("findAfter " + property + " " + direction, () -> repository.findAfter(Book.builder().build(), first.next(book), 20)));
+            }
+        }
+
+        assertThat(scans).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Nenhuma consulta do BookServiceImp deve varrer a tabela de livros")
+    public void bookServicePlansTest() {
+        // indices em memoria vazios e nao carregados: todas as leituras vao para a base
+        BookService service = new BookServiceImp(repository, new IsbnIndex(), new TrigramIndex(),
+                new BookCache(new ConcurrentMapCacheManager()), new BookCountCache(Duration.ZERO, 1),
+                new AvailabilityIndex(), new IsbnBloomFilter(100, 0.01), new SuggestIndex());
+        Book book = books.get(10);
+        List<String> scans = new ArrayList<>();
+
+        scans.addAll(scans("save", () -> service.save(Book.builder().title("Novo").author("Cesar").isbn(isbn(BOOKS + 2)).build())));
+        scans.addAll(scans("saveAll", () -> service.saveAll(Arrays.asList(Book.builder().title("Lote").author("Cesar").isbn(isbn(BOOKS + 3)).build()))));
+        scans.addAll(scans("getById", () -> service.getById(book.getId())));
+        scans.addAll(scans("getBookByIsbn", () -> service.getBookByIsbn(book.getIsbn())));
+        scans.addAll(scans("isAvailable", () -> service.isAvailable(book.getId())));
+        scans.addAll(scans("patch", () -> service.patch(Book.builder().id(book.getId()).author("Outro").build(), null)));
+        scans.addAll(scans("find isbn", () -> service.find(Book.builder().isbn(book.getIsbn()).build(), PageRequest.of(0, 20))));
+        scans.addAll(scans("findSlice title", () -> service.findSlice(Book.builder().build(), PageRequest.of(1, 20, Sort.by("title")))));
+        scans.addAll(scans("findAfter author", () -> service.findAfter(Book.builder().build(), BookCursor.first(Sort.by("author")), 20)));
+        scans.addAll(scans("deleteById", () -> service.deleteById(books.get(BOOKS - 2).getId())));
+
+        assertThat(scans).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Nenhuma consulta do LoanRepository deve varrer a tabela de emprestimos")
+    public void loanRepositoryPlansTest() {
+        Book book = books.get(3);
+        long loan = FIRST_LOAN + 1500;
+        List<String> scans = new ArrayList<>();
+
+        scans.addAll(scans("existsByOpenBookId", () -> loanRepository.existsByOpenBookId(book.getId())));
+        scans.addAll(scans("markReturned", () -> loanRepository.markReturned(FIRST_LOAN)));
+        scans.addAll(scans("search first page", () -> loanRepository.search(LoanFilter.builder().build(), null, 0, 21)));
+        scans.addAll(scans("search page 3", () -> loanRepository.search(LoanFilter.builder().build(), null, 40, 21)));
+        scans.addAll(scans("search cursor", () -> loanRepository.search(LoanFilter.builder().build(), loan, 0, 21)));
+        scans.addAll(scans("search isbn", () -> loanRepository.search(LoanFilter.builder().isbn(book.getIsbn()).build(), null, 0, 21)));
+        scans.addAll(scans("search returned", () -> loanRepository.search(LoanFilter.builder().returned(false).build(), null, 0, 21)));
+        scans.addAll(scans("search returned cursor", () -> loanRepository.search(LoanFilter.builder().returned(true).build(), loan, 0, 21)));
+        scans.addAll(scans("search customer", () -> loanRepository.search(LoanFilter.builder().customer("cliente1").build(), null, 0, 21)));
+        scans.addAll(scans("search customer cursor", () -> loanRepository.search(LoanFilter.builder().customer("cliente1").build(), loan + 1, 0, 21)));
+        LoanFilter dates = LoanFilter.builder().from(LocalDate.of(2020, 2, 1)).to(LocalDate.of(2020, 6, 30)).build();
+        scans.addAll(scans("search dates", () -> loanRepository.search(dates, null, 0, 21)));
+        scans.addAll(scans("search dates cursor", () -> loanRepository.search(dates, FIRST_LOAN + 1000, 0, 21)));
+
+        assertThat(scans).isEmpty();
+    }
+
+    @Test
+    @DisplayName("A varredura de atrasados deve ler so o lote seguinte a marca d'agua")
+    public void overdueScanPlanTest() {
+        // mais 4000 emprestimos abertos, 10 por dia; a marca d'agua fica no meio
+        List<Object[]> loans = new ArrayList<>();
+        for (int i = 0; i < 4000; i++) {
+            loans.add(new Object[]{100_000 + i, "cliente", books.get(i % BOOKS).getId(), Date.valueOf(LocalDate.of(2020, 1, 1).plusDays(i / 10))});
+        }
+        jdbcTemplate.batchUpdate("insert into loan (id, customer, book_id, loan_date, returned) values (?, ?, ?, ?, false)", loans);
+        Date watermark = Date.valueOf(LocalDate.of(2020, 1, 1).plusDays(200));
+
+        String plan = jdbcTemplate.queryForObject("explain analyze " + OverdueLoanScanner.NEXT_BATCH, String.class,
+                watermark, Date.valueOf(LocalDate.of(2021, 12, 31)), watermark, 102_005, 50);
+
+        assertThat(plan).contains("IDX_LOAN_RETURNED_DATE_ID").contains("index sorted");
+        assertThat(scanCount(plan)).isLessThanOrEqualTo(60);
+    }
+
+    // soma dos scanCount de cada tabela no EXPLAIN ANALYZE: linhas que o H2 leu para responder
+    private static long scanCount(String plan) {
+        long total = 0;
+        Matcher matcher = SCAN_COUNT.matcher(plan);
+        while (matcher.find()) {
+            total += Long.parseLong(matcher.group(1));
+        }
+        return total;
+    }
+
+    // maior scanCount entre as tabelas do plano
+    private static long maxScanCount(String plan) {
+        long max = 0;
+        Matcher matcher = SCAN_COUNT.matcher(plan);
+        while (matcher.find()) {
+            max = Math.max(max, Long.parseLong(matcher.group(1)));
+        }
+        return max;
+    }
+
+    // executa a acao gravando os SQLs e devolve o plano de cada um que leu demais
+    private List<String> scans(String name, Runnable action) {
+        capture.start();
+        try {
+            action.run();
+            entityManager.flush();
+        } finally {
+            capture.stop();
+        }
+        List<String> scans = new ArrayList<>();
+        for (Statement statement : capture.statements()) {
+            String sql = statement.sql.trim().toLowerCase(Locale.ROOT);
+            if (!sql.startsWith("select") && !sql.startsWith("update") && !sql.startsWith("delete")) {
+                continue; // insert e proximo valor da sequence nao leem tabela
+            }
+            // o ANALYZE executa o comando de novo; dentro da transacao do teste, que e desfeita no fim
+            String plan = jdbcTemplate.query("explain analyze " + statement.sql, ps -> {
+                for (ParameterSetOperation operation : statement.parameters) {
+                    try {
+                        operation.getMethod().invoke(ps, operation.getArgs());
+                    } catch (IllegalAccessException | InvocationTargetException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }, rs -> rs.next() ? rs.getString(1) : "");
+            if (plan.contains(".tableScan") || maxScanCount(plan) > MAX_ROWS_READ) {
+                scans.add(name + " (" + maxScanCount(plan) + " linhas): " + plan);
+            }
+        }
+        return scans;
+    }
+
+    private static String isbn(int i) {
+        String digits = String.format("978%09d", i);
+        int sum = 0;
+        for (int d = 0; d < 12; d++) {
+            sum += (digits.charAt(d) - '0') * (d % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+
+    static final class Statement {
+        final String sql;
+        final List<ParameterSetOperation> parameters;
+
+        Statement(String sql, List<ParameterSetOperation> parameters) {
+            this.sql = sql;
+            this.parameters = parameters;
+        }
+    }
+
+    // guarda o SQL e os parametros de cada comando enquanto estiver ligado
+    static final class Capture implements QueryExecutionListener {
+        private final List<Statement> statements = Collections.synchronizedList(new ArrayList<>());
+        private volatile boolean capturing;
+
+        void start() {
+            statements.clear();
+            capturing = true;
+        }
+
+        void stop() {
+            capturing = false;
+        }
+
+        List<Statement> statements() {
+            return new ArrayList<>(statements);
+        }
+
+        @Override
+        public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        }
+
+        @Override
+        public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+            if (!capturing) {
+                return;
+            }
+            for (QueryInfo query : queryInfoList) {
+                List<ParameterSetOperation> parameters = query.getParametersList().isEmpty()
+                        ? Collections.emptyList() : query.getParametersList().get(0);
+                statements.add(new Statement(query.getQuery(), new ArrayList<>(parameters)));
+            }
+        }
+    }
+
+    @TestConfiguration
+    static class CaptureConfiguration {
+
+        @Bean
+        Capture capture() {
+            return new Capture();
+        }
+
+        @Bean
+        static BeanPostProcessor captureDataSource(ObjectProvider<Capture> capture) {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (!(bean instanceof DataSource)) {
+                        return bean;
+                    }
+                    return ProxyDataSourceBuilder.create(beanName, (DataSource) bean).listener(capture.getObject()).build();
+                }
+            };
+        }
+    }
+}
@@ -1,10 +1,19 @@
 package com.projetolivraria.libraryapi.service;
 
 
+import com.projetolivraria.libraryapi.api.exception.BatchException;
 import com.projetolivraria.libraryapi.api.exception.BusinessException;
 import com.projetolivraria.libraryapi.model.entity.Book;
+import com.projetolivraria.libraryapi.model.repository.BookFields;
 import com.projetolivraria.libraryapi.model.repository.BookRepository;
 import com.projetolivraria.libraryapi.service.impl.BookServiceImp;
+import com.projetolivraria.libraryapi.service.index.AvailabilityIndex;
+import com.projetolivraria.libraryapi.service.index.BookCache;
+import com.projetolivraria.libraryapi.service.index.BookCountCache;
+import com.projetolivraria.libraryapi.service.index.IsbnBloomFilter;
+import com.projetolivraria.libraryapi.service.index.IsbnIndex;
+import com.projetolivraria.libraryapi.service.index.SuggestIndex;
+import com.projetolivraria.libraryapi.service.index.TrigramIndex;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -12,13 +21,18 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -31,13 +45,29 @@ public class BookServiceTeste {
 
     BookService service;
 
+    IsbnIndex isbnIndex;
+
+    TrigramIndex trigramIndex;
+
+    AvailabilityIndex availability;
+
+    IsbnBloomFilter isbnFilter;
+
+    SuggestIndex suggestIndex;
+
     @MockBean
     BookRepository repository;
 
     // vai ser executado antes de cada teste
     @BeforeEach
     public void setUp(){
-        this.service = new BookServiceImp( repository);
+        this.isbnIndex = new IsbnIndex();
+        this.trigramIndex = new TrigramIndex();
+        this.availability = new AvailabilityIndex();
+        this.isbnFilter = new IsbnBloomFilter(100, 0.01);
+        this.suggestIndex = new SuggestIndex();
+        this.service = new BookServiceImp( repository, isbnIndex, trigramIndex, new BookCache(new ConcurrentMapCacheManager()),
+                new BookCountCache(Duration.ofMinutes(1), 100), availability, isbnFilter, suggestIndex);
     }
 
     @Test
@@ -65,6 +95,41 @@ public class BookServiceTeste {
         return Book.builder().isbn("123").author("FUlano").title("As aventuras").build();
     }
 
+    @Test
+    @DisplayName("Deve pular a consulta de isbn quando o filtro de Bloom garante que ele e novo")
+    public void saveBookSkipsIsbnQueryTest() {
+        //cenario
+        isbnFilter.put(Book.builder().isbn("999").build());
+        isbnFilter.markReady();
+        Book book = createValidBook();
+        Mockito.when(repository.save(book)).thenReturn(book.toBuilder().id(1l).build());
+        Mockito.when(repository.existsByIsbn("999")).thenReturn(true);
+
+        //execucao
+        service.save(book);
+        Throwable exception = Assertions.catchThrowable(() -> service.save(Book.builder().isbn("999").build()));
+
+        //verificacao
+        Mockito.verify(repository, Mockito.never()).existsByIsbn(book.getIsbn());
+        assertThat(isbnFilter.mightContain(book.getIsbn())).isTrue();
+        assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Isnb ja cadastrado");
+    }
+
+    @Test
+    @DisplayName("Deve traduzir a violacao da unique de isbn em erro de negocio")
+    public void saveBookUniqueViolationTest() {
+        //cenario
+        isbnFilter.markReady();
+        Book book = createValidBook();
+        Mockito.when(repository.save(book)).thenThrow(new DataIntegrityViolationException("idx_book_isbn"));
+
+        //execucao
+        Throwable exception = Assertions.catchThrowable(() -> service.save(book));
+
+        //verificacao
+        assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Isnb ja cadastrado");
+    }
+
     @Test
     @DisplayName("Deve lançar erro de negocio ao tentar salvar um livro com isbn ja cadastrado")
     public void shouldNotSaveABookWithDuplicatedISBN(){
@@ -117,6 +182,64 @@ public class BookServiceTeste {
 
     }
 
+    @Test
+    @DisplayName("Deve obter o livro do cache a partir da segunda leitura")
+    public void getByIdCachedTest() {
+        //cenario
+        Book book = createValidBook();
+        book.setId(1l);
+        Mockito.when(repository.findById(1l)).thenReturn(Optional.of(book));
+
+        //execucao
+        Book first = service.getById(1l).get();
+        first.setTitle("alterado fora do cache");
+        Optional<Book> second = service.getById(1l);
+
+        //verificacao
+        Mockito.verify(repository, Mockito.times(1)).findById(1l);
+        assertThat(second.get().getTitle()).isEqualTo("As aventuras");
+    }
+
+    @Test
+    @DisplayName("Nao deve guardar no cache um livro inexistente")
+    public void getByIdNotFoundNotCachedTest() {
+        //cenario
+        Book book = createValidBook();
+        book.setId(1l);
+        Mockito.when(repository.findById(1l)).thenReturn(Optional.empty(), Optional.of(book));
+
+        //execucao
+        service.getById(1l);
+        Optional<Book> found = service.getById(1l);
+
+        //verificacao
+        assertThat(found.isPresent()).isTrue();
+        Mockito.verify(repository, Mockito.times(2)).findById(1l);
+    }
+
+    @Test
+    @DisplayName("Deve invalidar o cache ao atualizar e ao deletar um livro")
+    public void cacheEvictedOnUpdateAndDeleteTest() {
+        //cenario
+        Book book = createValidBook();
+        book.setId(1l);
+        Book updated = book.toBuilder().title("Novo titulo").build();
+        Mockito.when(repository.findById(1l)).thenReturn(Optional.of(book), Optional.of(updated), Optional.empty());
+        Mockito.when(repository.save(updated)).thenReturn(updated);
+
+        //execucao
+        service.getById(1l);
+        service.update(updated);
+        Optional<Book> afterUpdate = service.getById(1l);
+        service.delete(updated);
+        Optional<Book> afterDelete = service.getById(1l);
+
+        //verificacao
+        assertThat(afterUpdate.get().getTitle()).isEqualTo("Novo titulo");
+        assertThat(afterDelete.isPresent()).isFalse();
+        Mockito.verify(repository, Mockito.times(3)).findById(1l);
+    }
+
     @Test
     @DisplayName("Deve deletar um livro")
     public void deleteBookTeste() {
@@ -195,17 +318,409 @@ public class BookServiceTeste {
         PageRequest pageRequest = PageRequest.of(0, 10);
 
         List<Book> lista = Arrays.asList(book);
-        Page<Book> page = new PageImpl<Book>(lista, pageRequest, 1);
-        Mockito.when(repository.findAll(Mockito.any(Example.class), Mockito.any(PageRequest.class)))
-                .thenReturn(page);
+        Mockito.when(repository.findSlice(book, pageRequest)).thenReturn(lista);
         // execucao
         Page<Book> result = service.find(book, pageRequest);
 
         //verificacoes
         assertThat(result.getTotalElements()).isEqualTo(1);
+        Mockito.verify(repository, Mockito.never()).countMatching(Mockito.any(Book.class)); // a pagina incompleta ja diz o total
         assertThat(result.getContent()).isEqualTo(lista);
         assertThat(result.getPageable().getPageNumber()).isEqualTo(0);
         assertThat(result.getPageable().getPageSize()).isEqualTo(10);
     }
 
+    @Test
+    @DisplayName("Deve guardar o total por filtro e contar de novo depois de uma escrita")
+    public void findBookCountCacheTest() {
+        //cenario
+        PageRequest pageRequest = PageRequest.of(0, 1);
+        List<Book> rows = Arrays.asList(createValidBook(), createValidBook());
+        Mockito.when(repository.findSlice(Mockito.any(Book.class), Mockito.eq(pageRequest))).thenReturn(rows);
+        Mockito.when(repository.countMatching(Mockito.any(Book.class))).thenReturn(5l, 6l);
+        Mockito.when(repository.existsByIsbn(Mockito.anyString())).thenReturn(false);
+        Mockito.when(repository.save(Mockito.any(Book.class))).thenReturn(Book.builder().id(1l).isbn("9").title("x").author("y").build());
+
+        //execucao
+        Page<Book> first = service.find(Book.builder().title("Aventuras").build(), pageRequest);
+        Page<Book> second = service.find(Book.builder().title("AVENTURAS").build(), pageRequest);
+        service.save(createValidBook());
+        Page<Book> third = service.find(Book.builder().title("aventuras").build(), pageRequest);
+
+        //verificacao
+        assertThat(first.getContent().size()).isEqualTo(1);
+        assertThat(first.getTotalElements()).isEqualTo(5);
+        assertThat(second.getTotalElements()).isEqualTo(5);
+        assertThat(third.getTotalElements()).isEqualTo(6);
+        Mockito.verify(repository, Mockito.times(2)).countMatching(Mockito.any(Book.class));
+    }
+
+    @Test
+    @DisplayName("Deve obter so os campos pedidos pela base quando o livro nao esta no cache")
+    public void getByIdFieldsTest() {
+        //cenario
+        BookFields fields = BookFields.parse("title");
+        Book projected = Book.builder().id(1l).title("As aventuras").version(0l).build();
+        Mockito.when(repository.findFieldsById(Arrays.asList(1l), fields)).thenReturn(Arrays.asList(projected));
+
+        //execucao
+        Optional<Book> found = service.getById(1l, fields);
+
+        //verificacao
+        assertThat(found.get().getTitle()).isEqualTo("As aventuras");
+        Mockito.verify(repository, Mockito.never()).findById(Mockito.anyLong());
+    }
+
+    @Test
+    @DisplayName("Deve indexar o livro relido da base depois do patch, nao a copia do indice")
+    public void patchBookTest() {
+        //cenario: o indice ainda tem a versao 1; outro patch ja levou a base a versao 2 antes deste
+        Book book = Book.builder().id(1l).isbn("123").title("As aventuras").author("Fulano").version(1l).build();
+        isbnIndex.put(book);
+        trigramIndex.put(book);
+        trigramIndex.markReady();
+        Mockito.when(repository.updateFields(Mockito.any(Book.class), Mockito.isNull())).thenReturn(1);
+        Mockito.when(repository.findFieldsById(Arrays.asList(1l), BookFields.ALL))
+                .thenReturn(Arrays.asList(book.toBuilder().title("Memorias").author("Beltrano").version(3l).build()));
+
+        //execucao
+        Optional<Book> updated = service.patch(Book.builder().id(1l).title("Memorias").build(), null);
+
+        //verificacao
+        assertThat(updated.get().getVersion()).isEqualTo(3l);
+        assertThat(isbnIndex.get("123").get().getTitle()).isEqualTo("Memorias");
+        assertThat(isbnIndex.get("123").get().getAuthor()).isEqualTo("Beltrano");
+        assertThat(isbnIndex.get("123").get().getVersion()).isEqualTo(3l);
+        assertThat(trigramIndex.search(Book.builder().title("memor").build(), Sort.unsorted()).get()).isEqualTo(Arrays.asList(1l));
+    }
+
+    @Test
+    @DisplayName("Deve indexar o patch mesmo com o livro fora do IsbnIndex")
+    public void patchBookNotIndexedTest() {
+        //cenario: o BookIndexLoader ainda nao chegou neste livro
+        trigramIndex.markReady();
+        Book book = Book.builder().id(1l).isbn("123").title("Memorias").author("Fulano").version(1l).build();
+        Mockito.when(repository.updateFields(Mockito.any(Book.class), Mockito.isNull())).thenReturn(1);
+        Mockito.when(repository.findFieldsById(Arrays.asList(1l), BookFields.ALL)).thenReturn(Arrays.asList(book));
+
+        //execucao
+        service.patch(Book.builder().id(1l).title("Memorias").build(), null);
+
+        //verificacao
+        assertThat(trigramIndex.search(Book.builder().title("memor").build(), Sort.unsorted()).get()).isEqualTo(Arrays.asList(1l));
+        assertThat(isbnIndex.get("123").get().getVersion()).isEqualTo(1l);
+    }
+
+    @Test
+    @DisplayName("Deve devolver vazio no patch sem linha alterada, sem mexer nos indices")
+    public void patchBookNotUpdatedTest() {
+        Mockito.when(repository.updateFields(Mockito.any(Book.class), Mockito.eq(4l))).thenReturn(0);
+
+        assertThat(service.patch(Book.builder().id(1l).title("Memorias").build(), 4l).isPresent()).isFalse();
+        Mockito.verify(repository, Mockito.never()).findFieldsById(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    @DisplayName("Deve apagar pelo id e tirar o livro dos indices")
+    public void deleteByIdTest() {
+        //cenario
+        Book book = Book.builder().id(1l).isbn("123").title("As aventuras").author("Fulano").version(0l).build();
+        isbnIndex.put(book);
+        Mockito.when(repository.deleteDirectlyById(1l)).thenReturn(1);
+        Mockito.when(repository.deleteDirectlyById(2l)).thenReturn(0);
+
+        //execucao e verificacao
+        assertThat(service.deleteById(1l)).isTrue();
+        assertThat(service.deleteById(2l)).isFalse();
+        assertThat(isbnIndex.get("123").isPresent()).isFalse();
+        Mockito.verify(repository, Mockito.never()).findById(Mockito.anyLong());
+    }
+
+    @Test
+    @DisplayName("Deve lançar erro de negocio ao apagar um livro com historico de emprestimos")
+    public void deleteByIdWithLoansTest() {
+        //cenario
+        Book book = Book.builder().id(1l).isbn("123").title("As aventuras").author("Fulano").version(0l).build();
+        isbnIndex.put(book);
+        Mockito.when(repository.deleteDirectlyById(1l)).thenThrow(new DataIntegrityViolationException("fk_loan_book"));
+
+        //execucao
+        Throwable exception = Assertions.catchThrowable(() -> service.deleteById(1l));
+
+        //verificacao
+        assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Livro com emprestimos");
+        assertThat(isbnIndex.get("123").isPresent()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve manter as sugestoes em dia com cadastro, patch e exclusao")
+    public void suggestTest() {
+        //cenario
+        suggestIndex.markReady();
+        Book book = Book.builder().isbn("9780000000019").title("As aventuras").author("Fulano").build();
+        Mockito.when(repository.existsByIsbn(Mockito.anyString())).thenReturn(false);
+        Mockito.when(repository.save(book)).thenReturn(book.toBuilder().id(1l).version(0l).build());
+        Mockito.when(repository.updateFields(Mockito.any(Book.class), Mockito.isNull())).thenReturn(1);
+        Mockito.when(repository.findFieldsById(Arrays.asList(1l), BookFields.ALL))
+                .thenReturn(Arrays.asList(book.toBuilder().id(1l).title("Memorias").version(1l).build()));
+        Mockito.when(repository.deleteDirectlyById(1l)).thenReturn(1);
+
+        //execucao e verificacao
+        service.save(book);
+        Assertions.assertThat(service.suggest("aven", 10)).extracting(SuggestIndex.Suggestion::getText).containsExactly("As aventuras");
+
+        service.patch(Book.builder().id(1l).title("Memorias").build(), null);
+        Assertions.assertThat(service.suggest("aven", 10)).isEmpty();
+        Assertions.assertThat(service.suggest("mem", 10)).extracting(SuggestIndex.Suggestion::getText).containsExactly("Memorias");
+
+        service.deleteById(1l);
+        Assertions.assertThat(service.suggest("mem", 10)).isEmpty();
+        Assertions.assertThat(service.suggest("ful", 10)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Deve filtrar livros sem consultar o total")
+    public void findBookSliceTest() {
+        //cenario
+        PageRequest pageRequest = PageRequest.of(0, 2);
+        Book filter = Book.builder().author("Fulano").build();
+        Mockito.when(repository.findSlice(filter, pageRequest)).thenReturn(Arrays.asList(createValidBook(), createValidBook(), createValidBook()));
+
+        //execucao
+        Slice<Book> result = service.findSlice(filter, pageRequest);
+
+        //verificacao
+        assertThat(result.getContent().size()).isEqualTo(2);
+        assertThat(result.hasNext()).isTrue();
+        Mockito.verify(repository, Mockito.never()).countMatching(Mockito.any(Book.class));
+    }
+
+    @Test
+    @DisplayName("Deve obter um livro pelo isbn a partir do indice em memoria")
+    public void getBookByIsbnFromIndexTest() {
+        //cenario
+        Book book = createValidBook();
+        book.setId(1l);
+        isbnIndex.put(book);
+        isbnIndex.markReady();
+
+        //execucao
+        Optional<Book> foundBook = service.getBookByIsbn("123");
+
+        //verificacao
+        assertThat(foundBook.isPresent()).isTrue();
+        assertThat(foundBook.get().getId()).isEqualTo(1l);
+        Mockito.verify(repository, Mockito.never()).findByIsbn(Mockito.anyString());
+    }
+
+    @Test
+    @DisplayName("Deve consultar a base quando o isbn nao esta no indice carregado, pois outra instancia pode ter cadastrado")
+    public void getBookByIsbnNotFoundTest() {
+        isbnIndex.markReady();
+        Book book = Book.builder().id(1l).isbn("123").author("Fulano").title("As aventuras").version(0l).build();
+        Mockito.when(repository.findByIsbn("123")).thenReturn(Optional.of(book));
+
+        Optional<Book> foundBook = service.getBookByIsbn("123");
+        Optional<Book> missing = service.getBookByIsbn("456");
+
+        assertThat(foundBook.isPresent()).isTrue();
+        assertThat(isbnIndex.get("123").isPresent()).isTrue();
+        assertThat(missing.isPresent()).isFalse();
+        Mockito.verify(repository).findByIsbn("456");
+    }
+
+    @Test
+    @DisplayName("Nao deve voltar o indice de isbn para uma versao mais antiga do livro")
+    public void isbnIndexKeepsNewestVersionTest() {
+        isbnIndex.put(Book.builder().id(1l).isbn("123").title("Novo").version(2l).build());
+
+        isbnIndex.put(Book.builder().id(1l).isbn("123").title("Antigo").version(1l).build());
+        isbnIndex.put(Book.builder().id(1l).isbn("456").title("Antigo").version(0l).build());
+
+        assertThat(isbnIndex.get("123").get().getTitle()).isEqualTo("Novo");
+        assertThat(isbnIndex.get("456").isPresent()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve buscar o isbn na base enquanto o indice nao foi carregado")
+    public void getBookByIsbnBeforeIndexLoadedTest() {
+        Book book = createValidBook();
+        book.setId(1l);
+        Mockito.when(repository.findByIsbn("123")).thenReturn(Optional.of(book));
+
+        Optional<Book> foundBook = service.getBookByIsbn("123");
+
+        assertThat(foundBook.isPresent()).isTrue();
+        assertThat(isbnIndex.get("123").isPresent()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve manter o indice de isbn atualizado ao salvar e deletar")
+    public void isbnIndexFollowsWritesTest() {
+        Book book = createValidBook();
+        Book savedBook = Book.builder().id(1l).isbn("123").author("Fulano").title("As aventuras").build();
+        Mockito.when(repository.existsByIsbn(Mockito.anyString())).thenReturn(false);
+        Mockito.when(repository.save(book)).thenReturn(savedBook);
+
+        service.save(book);
+        assertThat(isbnIndex.get("123").isPresent()).isTrue();
+
+        service.delete(savedBook);
+        assertThat(isbnIndex.get("123").isPresent()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve filtrar livros pelo indice de trigramas sem consultar com Example")
+    public void findBookByTrigramIndexTest() {
+        //cenario
+        Book first = Book.builder().id(1l).isbn("123").author("Fulano").title("As Aventuras").build();
+        Book second = Book.builder().id(2l).isbn("456").author("Ciclano").title("Outras aventuras").build();
+        Book third = Book.builder().id(3l).isbn("789").author("Fulano").title("Memorias").build();
+        trigramIndex.put(first);
+        trigramIndex.put(second);
+        trigramIndex.put(third);
+        trigramIndex.markReady();
+        Mockito.when(repository.findAllById(Arrays.asList(1l, 2l))).thenReturn(Arrays.asList(second, first));
+
+        PageRequest pageRequest = PageRequest.of(0, 10);
+        Book filter = Book.builder().title("AVENTURA").build();
+
+        // execucao
+        Page<Book> result = service.find(filter, pageRequest);
+
+        //verificacoes
+        assertThat(result.getTotalElements()).isEqualTo(2);
+        assertThat(result.getContent()).isEqualTo(Arrays.asList(first, second));
+        Mockito.verify(repository, Mockito.never()).findAll(Mockito.any(Example.class), Mockito.any(PageRequest.class));
+    }
+
+    @Test
+    @DisplayName("Deve filtrar so os livros disponiveis pelo bitmap, sem consultar emprestimos na base")
+    public void findAvailableBooksByBitmapTest() {
+        //cenario
+        Book first = Book.builder().id(1l).isbn("123").author("Fulano").title("As Aventuras").build();
+        Book second = Book.builder().id(2l).isbn("456").author("Ciclano").title("Outras aventuras").build();
+        trigramIndex.put(first);
+        trigramIndex.put(second);
+        trigramIndex.markReady();
+        availability.load(ids -> ids.accept(1l));
+        Mockito.when(repository.findAllById(Arrays.asList(2l))).thenReturn(Arrays.asList(second));
+
+        // execucao
+        Page<Book> available = service.find(Book.builder().title("aventura").available(true).build(), PageRequest.of(0, 10));
+
+        //verificacoes
+        assertThat(available.getTotalElements()).isEqualTo(1);
+        assertThat(available.getContent()).isEqualTo(Arrays.asList(second));
+        assertThat(service.isAvailable(1l)).isFalse();
+        assertThat(service.isAvailable(2l)).isTrue();
+        Mockito.verify(repository, Mockito.never()).findSlice(Mockito.any(Book.class), Mockito.any(PageRequest.class));
+        Mockito.verify(repository, Mockito.never()).hasOpenLoan(Mockito.anyLong());
+    }
+
+    @Test
+    @DisplayName("Deve listar os livros disponiveis sem termo de pesquisa so pela memoria")
+    public void findAvailableBooksWithoutTermTest() {
+        //cenario
+        Book first = Book.builder().id(1l).isbn("123").author("Fulano").title("As Aventuras").build();
+        Book second = Book.builder().id(2l).isbn("456").author("Ciclano").title("Memorias").build();
+        trigramIndex.put(first);
+        trigramIndex.put(second);
+        trigramIndex.markReady();
+        availability.load(ids -> ids.accept(1l));
+        Mockito.when(repository.findAllById(Arrays.asList(2l))).thenReturn(Arrays.asList(second));
+        Mockito.when(repository.findAllById(Arrays.asList(1l))).thenReturn(Arrays.asList(first));
+
+        // execucao
+        Page<Book> available = service.find(Book.builder().available(true).build(), PageRequest.of(0, 10));
+        Page<Book> loaned = service.find(Book.builder().title("as").available(false).build(), PageRequest.of(0, 10));
+
+        //verificacoes
+        assertThat(available.getContent()).isEqualTo(Arrays.asList(second));
+        assertThat(loaned.getContent()).isEqualTo(Arrays.asList(first));
+        Mockito.verify(repository, Mockito.never()).findSlice(Mockito.any(Book.class), Mockito.any(PageRequest.class));
+        Mockito.verify(repository, Mockito.never()).countMatching(Mockito.any(Book.class));
+    }
+
+    @Test
+    @DisplayName("Deve consultar a base enquanto o bitmap de disponibilidade nao foi carregado")
+    public void findAvailableBooksBeforeBitmapLoadTest() {
+        //cenario
+        Book book = Book.builder().id(1l).isbn("123").author("Fulano").title("As Aventuras").build();
+        trigramIndex.put(book);
+        trigramIndex.markReady();
+        Book filter = Book.builder().title("aventura").available(true).build();
+        PageRequest pageRequest = PageRequest.of(0, 10);
+        Mockito.when(repository.findSlice(filter, pageRequest)).thenReturn(Arrays.asList(book));
+        Mockito.when(repository.hasOpenLoan(1l)).thenReturn(true);
+
+        // execucao
+        Page<Book> result = service.find(filter, pageRequest);
+
+        //verificacoes
+        assertThat(result.getContent()).isEqualTo(Arrays.asList(book));
+        assertThat(service.isAvailable(1l)).isFalse();
+        Mockito.verify(repository, Mockito.never()).findAllById(Mockito.anyIterable());
+    }
+
+    @Test
+    @DisplayName("Deve salvar um lote de livros com uma unica consulta de isbns")
+    public void saveAllTest() {
+        List<Book> books = Arrays.asList(createValidBook(), Book.builder().isbn("456").author("Ciclano").title("Memorias").build());
+        Mockito.when(repository.findExistingIsbns(Arrays.asList("123", "456"))).thenReturn(Arrays.asList());
+        Mockito.when(repository.insertAll(books)).thenAnswer(invocation -> {
+            books.get(0).setId(1l);
+            books.get(1).setId(2l);
+            return books;
+        });
+
+        List<Book> saved = service.saveAll(books);
+
+        assertThat(saved.get(1).getId()).isEqualTo(2l);
+        assertThat(isbnIndex.get("456").isPresent()).isTrue();
+        Mockito.verify(repository, Mockito.times(1)).findExistingIsbns(Mockito.anyCollection());
+        Mockito.verify(repository, Mockito.never()).existsByIsbn(Mockito.anyString());
+    }
+
+    @Test
+    @DisplayName("Deve rejeitar o lote apontando isbns ja cadastrados e repetidos")
+    public void saveAllWithDuplicatedIsbnTest() {
+        List<Book> books = Arrays.asList(
+                createValidBook(),
+                Book.builder().isbn("456").author("Ciclano").title("Memorias").build(),
+                Book.builder().isbn("456").author("Beltrano").title("Outro").build());
+        Mockito.when(repository.findExistingIsbns(Mockito.anyCollection())).thenReturn(Arrays.asList("123"));
+
+        Throwable exception = Assertions.catchThrowable(() -> service.saveAll(books));
+
+        assertThat(exception).isInstanceOf(BatchException.class);
+        Assertions.assertThat(((BatchException) exception).getErrors())
+                .containsExactly("[0] isbn: Isnb ja cadastrado", "[2] isbn: repetido no lote, igual ao item 1");
+        Mockito.verify(repository, Mockito.never()).insertAll(Mockito.anyList());
+    }
+
+    @Test
+    @DisplayName("Deve apontar os itens do lote quando outro cadastro do isbn entra junto")
+    public void saveAllRaceTest() {
+        List<Book> books = Arrays.asList(createValidBook(), Book.builder().isbn("456").author("Ciclano").title("Memorias").build());
+        Mockito.when(repository.findExistingIsbns(Arrays.asList("123", "456"))).thenReturn(Arrays.asList(), Arrays.asList("456"));
+        Mockito.when(repository.insertAll(books)).thenThrow(new DataIntegrityViolationException("idx_book_isbn"));
+
+        Throwable exception = Assertions.catchThrowable(() -> service.saveAll(books));
+
+        assertThat(exception).isInstanceOf(BatchException.class);
+        Assertions.assertThat(((BatchException) exception).getErrors()).containsExactly("[1] isbn: Isnb ja cadastrado");
+        assertThat(isbnIndex.get("123").isPresent()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Nao deve chamar de isbn repetido uma violacao de outra restricao")
+    public void saveOtherViolationTest() {
+        Book book = createValidBook();
+        Mockito.when(repository.save(book)).thenThrow(new DataIntegrityViolationException("ck_book_title"));
+        Mockito.when(repository.insertAll(Arrays.asList(book))).thenThrow(new DataIntegrityViolationException("ck_book_title"));
+
+        assertThat(Assertions.catchThrowable(() -> service.save(book))).isInstanceOf(DataIntegrityViolationException.class);
+        assertThat(Assertions.catchThrowable(() -> service.saveAll(Arrays.asList(book)))).isInstanceOf(DataIntegrityViolationException.class);
+    }
 }
@@ -0,0 +1,209 @@
+package com.projetolivraria.libraryapi.service;
+
+import com.projetolivraria.libraryapi.api.exception.BusinessException;
+import com.projetolivraria.libraryapi.api.service.LoanService;
+import com.projetolivraria.libraryapi.model.entity.Book;
+import com.projetolivraria.libraryapi.model.entity.Loan;
+import com.projetolivraria.libraryapi.model.repository.LoanFilter;
+import com.projetolivraria.libraryapi.model.repository.LoanRepository;
+import com.projetolivraria.libraryapi.service.impl.LoanServiceImp;
+import com.projetolivraria.libraryapi.service.index.AvailabilityIndex;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class LoanServiceTeste {
+
+    LoanService service;
+
+    AvailabilityIndex availability;
+
+    @MockBean
+    LoanRepository repository;
+
+    @BeforeEach
+    public void setUp() {
+        this.availability = new AvailabilityIndex();
+        this.service = new LoanServiceImp(repository, Optional.empty(), availability);
+    }
+
+    @Test
+    @DisplayName("Deve salvar um emprestimo aberto")
+    public void saveLoanTest() {
+        // cenario
+        Loan loan = createLoan();
+        Mockito.when(repository.existsByOpenBookId(1l)).thenReturn(false);
+        Mockito.when(repository.saveAndFlush(loan)).thenAnswer(invocation -> {
+            loan.setId(1l);
+            return loan;
+        });
+
+        // execucao
+        Loan savedLoan = service.save(loan);
+
+        // verificacao
+        assertThat(savedLoan.getId()).isEqualTo(1l);
+        assertThat(savedLoan.getReturned()).isFalse();
+        assertThat(savedLoan.getOpenBookId()).isEqualTo(1l);
+        assertThat(availability.isLoaned(1l)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve separar devolucao, devolucao repetida e emprestimo inexistente")
+    public void returnLoanTest() {
+        // cenario
+        availability.loaned(10l);
+        availability.loaned(20l);
+        Mockito.when(repository.markReturned(1l)).thenReturn(Optional.of(10l));
+        Mockito.when(repository.markReturned(2l)).thenReturn(Optional.empty());
+        Mockito.when(repository.markReturned(3l)).thenReturn(Optional.empty());
+        Mockito.when(repository.existsById(2l)).thenReturn(true);
+        Mockito.when(repository.existsById(3l)).thenReturn(false);
+
+        // execucao e verificacao
+        assertThat(service.returnLoan(1l)).isEqualTo(LoanService.ReturnResult.RETURNED);
+        assertThat(service.returnLoan(2l)).isEqualTo(LoanService.ReturnResult.ALREADY_RETURNED);
+        assertThat(service.returnLoan(3l)).isEqualTo(LoanService.ReturnResult.NOT_FOUND);
+        assertThat(availability.isLoaned(10l)).isFalse();
+        assertThat(availability.isLoaned(20l)).isTrue();
+        Mockito.verify(repository, Mockito.never()).existsById(1l);
+        Mockito.verify(repository, Mockito.never()).existsByOpenBookId(Mockito.anyLong());
+        Mockito.verify(repository, Mockito.never()).findById(Mockito.anyLong());
+    }
+
+    @Test
+    @DisplayName("Nao deve liberar no bitmap o livro emprestado de novo entre a devolucao e o lock")
+    public void returnLoanCrossingNewLoanTest() {
+        // cenario: o livro 1 volta na base e, antes do lock da devolucao, e emprestado de novo
+        availability.loaned(1l);
+        Loan loan = createLoan();
+        Mockito.when(repository.existsByOpenBookId(1l)).thenReturn(false, false, true);
+        Mockito.when(repository.saveAndFlush(loan)).thenReturn(loan);
+        Mockito.when(repository.markReturned(5l)).thenAnswer(invocation -> {
+            service.save(loan);
+            return Optional.of(1l);
+        });
+
+        // execucao
+        LoanService.ReturnResult result = service.returnLoan(5l);
+
+        // verificacao
+        assertThat(result).isEqualTo(LoanService.ReturnResult.RETURNED);
+        assertThat(availability.isLoaned(1l)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve paginar a pesquisa de emprestimos buscando uma linha a mais")
+    public void findLoansTest() {
+        // cenario
+        LoanFilter filter = LoanFilter.builder().returned(false).build();
+        List<Loan> rows = Arrays.asList(createLoan(), createLoan(), createLoan());
+        Mockito.when(repository.search(filter, null, 20, 3)).thenReturn(rows);
+        Mockito.when(repository.search(filter, 50l, 0, 3)).thenReturn(rows.subList(0, 2));
+
+        // execucao
+        Slice<Loan> page = service.find(filter, PageRequest.of(10, 2));
+        Slice<Loan> cursor = service.findAfter(filter, 50l, 2);
+
+        // verificacao
+        assertThat(page.getContent().size()).isEqualTo(2);
+        assertThat(page.hasNext()).isTrue();
+        assertThat(cursor.getContent().size()).isEqualTo(2);
+        assertThat(cursor.hasNext()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve lançar erro de negocio ao emprestar um livro ja emprestado")
+    public void loanedBookSaveTest() {
+        Loan loan = createLoan();
+        Mockito.when(repository.existsByOpenBookId(1l)).thenReturn(true);
+
+        Throwable exception = Assertions.catchThrowable(() -> service.save(loan));
+
+        assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Book already loaned");
+        Mockito.verify(repository, Mockito.never()).saveAndFlush(loan);
+    }
+
+    @Test
+    @DisplayName("Deve traduzir a violacao da restricao unique para erro de negocio")
+    public void concurrentLoanOnAnotherInstanceTest() {
+        Loan loan = createLoan();
+        Mockito.when(repository.existsByOpenBookId(1l)).thenReturn(false);
+        Mockito.when(repository.saveAndFlush(loan)).thenThrow(new DataIntegrityViolationException("open_book_id"));
+
+        Throwable exception = Assertions.catchThrowable(() -> service.save(loan));
+
+        assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Book already loaned");
+    }
+
+    @Test
+    @DisplayName("Deve abrir um unico emprestimo com muitos pedidos simultaneos do mesmo livro")
+    public void concurrentSameBookTest() throws Exception {
+        // cenario: repositorio em memoria, sem a restricao unique, so o lock segura a corrida
+        Set<Long> openBooks = ConcurrentHashMap.newKeySet();
+        AtomicLong ids = new AtomicLong();
+        Mockito.when(repository.existsByOpenBookId(Mockito.anyLong()))
+                .thenAnswer(invocation -> openBooks.contains(invocation.<Long>getArgument(0)));
+        Mockito.when(repository.saveAndFlush(Mockito.any(Loan.class))).thenAnswer(invocation -> {
+            Loan loan = invocation.getArgument(0);
+            Thread.sleep(1);
+            openBooks.add(loan.getOpenBookId());
+            loan.setId(ids.incrementAndGet());
+            return loan;
+        });
+
+        // execucao
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Callable<Boolean> task = () -> {
+                try {
+                    service.save(createLoan());
+                    return true;
+                } catch (BusinessException e) {
+                    return false;
+                }
+            };
+            results.add(executor.submit(task));
+        }
+        int created = 0;
+        for (Future<Boolean> result : results) {
+            created += result.get() ? 1 : 0;
+        }
+        executor.shutdown();
+
+        // verificacao
+        assertThat(created).isEqualTo(1);
+    }
+
+    private Loan createLoan() {
+        Book book = Book.builder().id(1l).isbn("123").build();
+        return Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build();
+    }
+}
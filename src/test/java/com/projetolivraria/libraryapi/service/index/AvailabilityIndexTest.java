@@ -0,0 +1,64 @@
+package com.projetolivraria.libraryapi.service.index;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AvailabilityIndexTest {
+
+    @Test
+    @DisplayName("Deve marcar o livro como emprestado e disponivel de novo na devolucao")
+    public void loanedAndReturnedTest() {
+        AvailabilityIndex index = new AvailabilityIndex();
+        index.load(ids -> {
+            ids.accept(1l);
+            ids.accept(5_000_000_000l);
+        });
+
+        index.loaned(2l);
+        index.returned(1l);
+
+        assertThat(index.isReady()).isTrue();
+        assertThat(index.isLoaned(1l)).isFalse();
+        assertThat(index.isLoaned(2l)).isTrue();
+        assertThat(index.isLoaned(5_000_000_000l)).isTrue();
+        assertThat(index.loanedCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Deve reaplicar emprestimos e devolucoes que chegam durante a recarga")
+    public void changesDuringLoadTest() {
+        AvailabilityIndex index = new AvailabilityIndex();
+
+        index.load(ids -> {
+            // a base ainda ve o emprestimo do livro 1 e nao ve o do livro 3
+            ids.accept(1l);
+            ids.accept(2l);
+            index.returned(1l);
+            index.loaned(3l);
+        });
+
+        assertThat(index.isLoaned(1l)).isFalse();
+        assertThat(index.isLoaned(2l)).isTrue();
+        assertThat(index.isLoaned(3l)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Nao deve ficar pronto quando a leitura da base falha")
+    public void failedLoadTest() {
+        AvailabilityIndex index = new AvailabilityIndex();
+
+        try {
+            index.load(ids -> {
+                throw new IllegalStateException("base fora");
+            });
+        } catch (IllegalStateException e) {
+            // esperado
+        }
+        index.loaned(1l);
+
+        assertThat(index.isReady()).isFalse();
+        assertThat(index.isLoaned(1l)).isTrue();
+    }
+}
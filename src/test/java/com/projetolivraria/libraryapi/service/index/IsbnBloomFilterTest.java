@@ -0,0 +1,57 @@
+package com.projetolivraria.libraryapi.service.index;
+
+import com.projetolivraria.libraryapi.model.entity.Book;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IsbnBloomFilterTest {
+
+    @Test
+    @DisplayName("Nao deve ter falso negativo mesmo crescendo alem da capacidade inicial")
+    public void noFalseNegativeWhenGrowingTest() {
+        IsbnBloomFilter filter = new IsbnBloomFilter(100, 0.01);
+
+        for (int i = 0; i < 10_000; i++) {
+            filter.put(Book.builder().isbn("978" + i).build());
+        }
+
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(filter.mightContain("978" + i)).isTrue();
+        }
+        assertThat(filter.approximateCount()).isGreaterThan(9_500l);
+    }
+
+    @Test
+    @DisplayName("Deve manter a taxa de falso positivo perto da configurada")
+    public void falsePositiveRateTest() {
+        IsbnBloomFilter filter = new IsbnBloomFilter(1_000, 0.01);
+        for (int i = 0; i < 5_000; i++) {
+            filter.put(Book.builder().isbn("978" + i).build());
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain("979" + i)) {
+                falsePositives++;
+            }
+        }
+
+        // limite da serie das fatias: 2 * fpp
+        assertThat(falsePositives).isLessThan(200);
+    }
+
+    @Test
+    @DisplayName("Deve esquecer os isbns e ficar fora do ar ao limpar para a recarga")
+    public void clearTest() {
+        IsbnBloomFilter filter = new IsbnBloomFilter(100, 0.01);
+        filter.put(Book.builder().isbn("123").build());
+        filter.markReady();
+
+        filter.clear();
+
+        assertThat(filter.isReady()).isFalse();
+        assertThat(filter.mightContain("123")).isFalse();
+    }
+}
@@ -0,0 +1,94 @@
+package com.projetolivraria.libraryapi.service.index;
+
+import com.projetolivraria.libraryapi.model.entity.Book;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SuggestIndexTest {
+
+    SuggestIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        index = new SuggestIndex();
+        index.put(book(1l, "As Aventuras de Tom Sawyer", "Mark Twain"));
+        index.put(book(2l, "Aventura na Selva", "Cesar"));
+        index.put(book(3l, "Memórias Póstumas", "Machado de Assis"));
+        index.put(book(4l, "Dom Casmurro", "Machado de Assis"));
+        index.markReady();
+    }
+
+    @Test
+    @DisplayName("Deve sugerir pelo inicio do valor e de cada palavra, ignorando caixa e acento")
+    public void suggestByPrefixTest() {
+        assertThat(texts("AVENT")).containsExactly("As Aventuras de Tom Sawyer", "Aventura na Selva");
+        assertThat(texts("memo")).containsExactly("Memórias Póstumas");
+        assertThat(texts("postu")).containsExactly("Memórias Póstumas");
+        assertThat(texts("tom saw")).containsExactly("As Aventuras de Tom Sawyer");
+        assertThat(texts("xyz")).isEmpty();
+        assertThat(texts("  ")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Deve colocar primeiro o valor com mais livros e respeitar o limite")
+    public void suggestRankingTest() {
+        List<SuggestIndex.Suggestion> suggestions = index.suggest("ma", 2);
+
+        assertThat(suggestions).hasSize(2);
+        assertThat(suggestions.get(0).getText()).isEqualTo("Machado de Assis");
+        assertThat(suggestions.get(0).getField()).isEqualTo(SuggestIndex.AUTHOR);
+        assertThat(suggestions.get(0).getBooks()).isEqualTo(2);
+        assertThat(suggestions.get(1).getText()).isEqualTo("Mark Twain");
+    }
+
+    @Test
+    @DisplayName("Deve atualizar as sugestoes quando o livro muda ou sai")
+    public void updateAndRemoveTest() {
+        index.put(book(2l, "Aventureiros", "Cesar"));
+        index.remove(book(1l, null, null));
+        index.remove(book(3l, null, null));
+
+        assertThat(texts("avent")).containsExactly("Aventureiros");
+        assertThat(texts("sel")).isEmpty();
+        assertThat(texts("twa")).isEmpty();
+        assertThat(index.suggest("mach", 10).get(0).getBooks()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve achar valores que dividem o mesmo prefixo depois de remover um deles")
+    public void sharedPrefixTest() {
+        index.put(book(5l, "Abc", "X"));
+        index.put(book(6l, "Abcde", "X"));
+        index.put(book(7l, "Abcdf", "X"));
+
+        index.remove(book(6l, null, null));
+
+        assertThat(texts("abc")).containsExactly("Abc", "Abcdf");
+        assertThat(texts("abcd")).containsExactly("Abcdf");
+        assertThat(texts("abcdf")).containsExactly("Abcdf");
+        assertThat(texts("abcde")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Nao deve sugerir nada antes da carga terminar")
+    public void notReadyTest() {
+        index.clear();
+        index.put(book(1l, "As Aventuras", "Cesar"));
+
+        assertThat(texts("aven")).isEmpty();
+    }
+
+    private List<String> texts(String prefix) {
+        return index.suggest(prefix, 10).stream().map(SuggestIndex.Suggestion::getText).collect(Collectors.toList());
+    }
+
+    private static Book book(Long id, String title, String author) {
+        return Book.builder().id(id).title(title).author(author).build();
+    }
+}
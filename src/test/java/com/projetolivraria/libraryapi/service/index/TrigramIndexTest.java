@@ -0,0 +1,137 @@
+package com.projetolivraria.libraryapi.service.index;
+
+import com.projetolivraria.libraryapi.model.entity.Book;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.springframework.data.domain.Sort;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TrigramIndexTest {
+
+    TrigramIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        index = new TrigramIndex();
+        index.put(book(1l, "As Aventuras", "Cesar", "001"));
+        index.put(book(2l, "Outras aventuras", "Fulano", "002"));
+        index.put(book(3l, "Memorias", "Cesar Augusto", "003"));
+        index.markReady();
+    }
+
+    @Test
+    @DisplayName("Deve encontrar os livros que contem o termo ignorando caixa")
+    public void searchContainingIgnoreCaseTest() {
+        Optional<List<Long>> ids = index.search(Book.builder().title("VENTURA").build(), Sort.unsorted());
+
+        assertThat(ids).contains(Arrays.asList(1l, 2l));
+    }
+
+    @Test
+    @DisplayName("Deve combinar os filtros de titulo e autor")
+    public void searchByTitleAndAuthorTest() {
+        Optional<List<Long>> ids = index.search(Book.builder().title("ventura").author("ces").build(), Sort.unsorted());
+
+        assertThat(ids).contains(Arrays.asList(1l));
+    }
+
+    @Test
+    @DisplayName("Deve confirmar o termo curto nos candidatos do termo longo")
+    public void searchWithShortTermTest() {
+        Optional<List<Long>> ids = index.search(Book.builder().author("cesar").title("me").build(), Sort.unsorted());
+
+        assertThat(ids).contains(Arrays.asList(3l));
+    }
+
+    @Test
+    @DisplayName("Deve descartar candidatos com os trigramas fora de ordem")
+    public void searchFalsePositiveTest() {
+        index.put(book(4l, "abcbcd", "Beltrano", "004"));
+
+        // abc e bcd estao no titulo, mas "abcd" nao
+        Optional<List<Long>> ids = index.search(Book.builder().title("abcd").build(), Sort.unsorted());
+
+        assertThat(ids).contains(Arrays.asList());
+        assertThat(index.search(Book.builder().title("bcbc").build(), Sort.unsorted())).contains(Arrays.asList(4l));
+    }
+
+    @Test
+    @DisplayName("Deve ordenar pelo campo pedido")
+    public void searchSortedTest() {
+        Optional<List<Long>> ids = index.search(Book.builder().title("ras").build(), Sort.by(Sort.Direction.DESC, "title"));
+
+        assertThat(ids).contains(Arrays.asList(2l, 1l));
+    }
+
+    @Test
+    @DisplayName("Deve ordenar so ate o fim da pagina e contar todos os que casam")
+    public void searchLimitedTest() {
+        index.put(book(4l, "Aventuras de novo", "Beltrano", "004"));
+
+        TrigramIndex.Hits hits = index.search(Book.builder().title("ventura").build(), Sort.by(Sort.Direction.DESC, "title"), 2).get();
+
+        assertThat(hits.getIds()).isEqualTo(Arrays.asList(2l, 4l));
+        assertThat(hits.getTotal()).isEqualTo(3);
+        assertThat(index.search(Book.builder().title("ventura").build(), Sort.unsorted(), 0).get().getIds()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Deve delegar para a base quando nao consegue responder")
+    public void searchNotAnsweredTest() {
+        assertThat(index.search(Book.builder().title("as").build(), Sort.unsorted())).isEmpty();
+        assertThat(index.search(Book.builder().title("aventura").build(), Sort.by("customer"))).isEmpty();
+        assertThat(new TrigramIndex().search(Book.builder().title("aventura").build(), Sort.unsorted())).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Deve responder pelo conjunto de ids mesmo sem termo com trigrama")
+    public void searchByIdSetTest() {
+        Roaring64Bitmap loaned = new Roaring64Bitmap();
+        loaned.addLong(2l);
+
+        assertThat(index.search(Book.builder().build(), Sort.by("title"), loaned, false, 10).map(TrigramIndex.Hits::getIds)).contains(Arrays.asList(1l, 3l));
+        assertThat(index.search(Book.builder().build(), Sort.unsorted(), loaned, true, 10).map(TrigramIndex.Hits::getIds)).contains(Arrays.asList(2l));
+        assertThat(index.search(Book.builder().author("ce").build(), Sort.unsorted(), loaned, false, 10).map(TrigramIndex.Hits::getIds)).contains(Arrays.asList(1l, 3l));
+        assertThat(index.search(Book.builder().title("ventura").build(), Sort.unsorted(), loaned, false, 10).map(TrigramIndex.Hits::getIds)).contains(Arrays.asList(1l));
+        assertThat(new TrigramIndex().search(Book.builder().build(), Sort.unsorted(), loaned, false, 10)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Deve refletir atualizacoes e remocoes")
+    public void putAndRemoveTest() {
+        index.put(book(1l, "Novo titulo", "Cesar", "001"));
+        index.remove(book(2l, null, null, null));
+
+        assertThat(index.search(Book.builder().title("aventura").build(), Sort.unsorted())).contains(Arrays.asList());
+        assertThat(index.search(Book.builder().title("novo").build(), Sort.unsorted())).contains(Arrays.asList(1l));
+    }
+
+    @Test
+    @DisplayName("Nao deve guardar nem responder nada com mais de uma instancia da aplicacao")
+    public void notSingleNodeTest() {
+        TrigramIndex shared = new TrigramIndex(false);
+        shared.put(book(1l, "As Aventuras", "Cesar", "001"));
+        shared.markReady();
+
+        assertThat(shared.search(Book.builder().title("aventura").build(), Sort.unsorted())).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Deve achar o termo em qualquer caixa, mesmo com acento")
+    public void searchMixedCaseTest() {
+        index.put(book(5l, "MEMÓRIAS Póstumas", "Machado", "005"));
+
+        assertThat(index.search(Book.builder().title("mÓrias pós").build(), Sort.unsorted())).contains(Arrays.asList(5l));
+    }
+
+    private Book book(Long id, String title, String author, String isbn) {
+        return Book.builder().id(id).title(title).author(author).isbn(isbn).build();
+    }
+}
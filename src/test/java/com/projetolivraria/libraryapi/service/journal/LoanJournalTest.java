@@ -0,0 +1,91 @@
+package com.projetolivraria.libraryapi.service.journal;
+
+import com.projetolivraria.libraryapi.model.entity.Book;
+import com.projetolivraria.libraryapi.model.entity.Loan;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoanJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("Deve gravar e ler de volta os emprestimos de um segmento")
+    public void appendAndReadTest() throws Exception {
+        AtomicInteger written = new AtomicInteger();
+        Path sealed;
+        try (LoanJournal journal = new LoanJournal(directory)) {
+            journal.append(createLoan(1l, 10l, "Fulano"), written::incrementAndGet);
+            journal.append(createLoan(2l, 20l, "Ciclano de Tal"), written::incrementAndGet);
+            sealed = journal.rotate();
+            assertThat(journal.sealedSegments()).containsExactly(sealed);
+        }
+
+        List<Loan> loans = LoanJournal.read(sealed);
+
+        assertThat(written.get()).isEqualTo(2);
+        assertThat(loans).hasSize(2);
+        assertThat(loans.get(1).getId()).isEqualTo(2l);
+        assertThat(loans.get(1).getBook().getId()).isEqualTo(20l);
+        assertThat(loans.get(1).getOpenBookId()).isEqualTo(20l);
+        assertThat(loans.get(1).getCustomer()).isEqualTo("Ciclano de Tal");
+        assertThat(loans.get(1).getLoanDate()).isEqualTo(LocalDate.of(2021, 8, 1));
+    }
+
+    @Test
+    @DisplayName("Deve ignorar o registro cortado no final do segmento")
+    public void tornRecordTest() throws Exception {
+        Path sealed;
+        try (LoanJournal journal = new LoanJournal(directory)) {
+            journal.append(createLoan(1l, 10l, "Fulano"), () -> { });
+            sealed = journal.rotate();
+        }
+        // simula uma queda no meio da escrita do segundo registro
+        ByteBuffer record = LoanJournal.encode(createLoan(2l, 20l, "Ciclano"));
+        record.limit(record.capacity() - 3);
+        try (FileChannel channel = FileChannel.open(sealed, StandardOpenOption.APPEND)) {
+            channel.write(record);
+        }
+
+        List<Loan> loans = LoanJournal.read(sealed);
+
+        assertThat(loans).hasSize(1);
+        assertThat(loans.get(0).getId()).isEqualTo(1l);
+    }
+
+    @Test
+    @DisplayName("Deve continuar a numeracao dos segmentos depois de reabrir")
+    public void reopenTest() throws Exception {
+        try (LoanJournal journal = new LoanJournal(directory)) {
+            journal.append(createLoan(1l, 10l, "Fulano"), () -> { });
+        }
+
+        try (LoanJournal journal = new LoanJournal(directory)) {
+            // o segmento da execucao anterior fica disponivel para o replay
+            List<Path> sealed = journal.sealedSegments();
+            assertThat(sealed).hasSize(1);
+            assertThat(LoanJournal.read(sealed.get(0))).hasSize(1);
+        }
+    }
+
+    private Loan createLoan(Long id, Long bookId, String customer) {
+        return Loan.builder()
+                .id(id)
+                .book(Book.builder().id(bookId).build())
+                .customer(customer)
+                .loanDate(LocalDate.of(2021, 8, 1))
+                .build();
+    }
+}
@@ -0,0 +1,118 @@
+package com.projetolivraria.libraryapi.service.journal;
+
+import com.projetolivraria.libraryapi.api.exception.BusinessException;
+import com.projetolivraria.libraryapi.api.service.LoanService;
+import com.projetolivraria.libraryapi.model.entity.Book;
+import com.projetolivraria.libraryapi.model.entity.Loan;
+import com.projetolivraria.libraryapi.model.repository.BookRepository;
+import com.projetolivraria.libraryapi.model.repository.LoanRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.file.Paths;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ActiveProfiles("test")
+@SpringBootTest(properties = {
+        "library.loans.write-behind.enabled=true",
+        "library.loans.write-behind.directory=target/loan-journal-test",
+        "library.loans.write-behind.flush-interval-ms=3600000"
+})
+public class LoanWriteBehindTest {
+
+    @Autowired
+    LoanService service;
+
+    @Autowired
+    LoanWriteBehind writeBehind;
+
+    @Autowired
+    LoanRepository loanRepository;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    @DisplayName("Deve responder com o id antes de gravar e gravar o lote no flush")
+    public void writeBehindTest() throws Exception {
+        Book book = bookRepository.save(Book.builder().title("Aventuras").author("Cesar").isbn("9780000010018").build());
+
+        Loan loan = service.save(createLoan(book));
+
+        assertThat(loan.getId()).isNotNull();
+        assertThat(loanRepository.existsById(loan.getId())).isFalse();
+        Throwable exception = Assertions.catchThrowable(() -> service.save(createLoan(book)));
+        assertThat(exception).isInstanceOf(BusinessException.class);
+
+        writeBehind.flush();
+
+        assertThat(loanRepository.existsById(loan.getId())).isTrue();
+        assertThat(writeBehind.isPending(book.getId())).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve devolver um emprestimo que ainda esta so no journal")
+    public void returnPendingLoanTest() {
+        Book book = bookRepository.save(Book.builder().title("Contos").author("Cesar").isbn("9780000010032").build());
+        Loan loan = service.save(createLoan(book));
+
+        LoanService.ReturnResult result = service.returnLoan(loan.getId());
+
+        assertThat(result).isEqualTo(LoanService.ReturnResult.RETURNED);
+        assertThat(writeBehind.isPendingLoan(loan.getId())).isFalse();
+        assertThat(loanRepository.existsByOpenBookId(book.getId())).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve reaplicar na base os emprestimos que ficaram no journal")
+    public void replayTest() throws Exception {
+        Book book = bookRepository.save(Book.builder().title("Memorias").author("Cesar").isbn("9780000010025").build());
+        Loan pending = createLoan(book);
+        pending.setId(9_000_000l);
+        // journal de outra execucao que caiu antes de gravar na base
+        try (LoanJournal journal = new LoanJournal(Paths.get("target/loan-journal-test"))) {
+            journal.append(pending, () -> { });
+        }
+
+        writeBehind.replay();
+
+        assertThat(loanRepository.existsById(9_000_000l)).isTrue();
+        assertThat(loanRepository.existsByOpenBookId(book.getId())).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve guardar na fila de mortos o emprestimo ja confirmado que a base recusou")
+    public void deadLetterTest() throws Exception {
+        Book book = bookRepository.save(Book.builder().title("Poemas").author("Cesar").isbn("9780000010049").build());
+        Loan open = createLoan(book);
+        open.setId(9_000_001l);
+        Loan conflicting = createLoan(book);
+        conflicting.setId(9_000_002l);
+        // os dois emprestimos do mesmo livro chegaram ao journal (ex.: duas instancias); so o primeiro cabe na base
+        try (LoanJournal journal = new LoanJournal(Paths.get("target/loan-journal-test"))) {
+            journal.append(open, () -> { });
+            journal.append(conflicting, () -> { });
+        }
+
+        writeBehind.replay();
+
+        assertThat(loanRepository.existsById(9_000_001l)).isTrue();
+        assertThat(loanRepository.existsById(9_000_002l)).isFalse();
+        assertThat(jdbcTemplate.queryForObject("select count(*) from loan_dead_letter where loan_id = ? and book_id = ?",
+                Long.class, 9_000_002l, book.getId())).isEqualTo(1l);
+    }
+
+    private Loan createLoan(Book book) {
+        return Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build();
+    }
+}
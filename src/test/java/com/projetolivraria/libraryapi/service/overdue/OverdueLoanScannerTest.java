@@ -0,0 +1,122 @@
+package com.projetolivraria.libraryapi.service.overdue;
+
+import com.projetolivraria.libraryapi.model.entity.Book;
+import com.projetolivraria.libraryapi.model.entity.Loan;
+import com.projetolivraria.libraryapi.model.entity.LoanNotification;
+import com.projetolivraria.libraryapi.model.repository.BookRepository;
+import com.projetolivraria.libraryapi.model.repository.LoanRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ActiveProfiles("test")
+@SpringBootTest(properties = {
+        "library.loans.overdue.enabled=true",
+        "library.loans.overdue.days=10",
+        "library.loans.overdue.batch-size=2",
+        "library.loans.overdue.scan-interval=PT1H",
+        "library.loans.overdue.drain-interval=PT1H"
+})
+public class OverdueLoanScannerTest {
+
+    static final LocalDate TODAY = LocalDate.of(2021, 8, 31);
+
+    @Autowired
+    OverdueLoanScanner scanner;
+
+    @Autowired
+    OverdueNotificationConsumer consumer;
+
+    @MockBean
+    OverdueNotifier notifier;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    LoanRepository loanRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("delete from loan_notification");
+        jdbcTemplate.update("delete from scan_watermark");
+        loanRepository.deleteAll();
+        bookRepository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Deve avisar cada emprestimo atrasado uma unica vez, continuando da marca d'agua")
+    public void scanTest() {
+        //cenario
+        Loan late1 = loan("9780000020017", TODAY.minusDays(30), false);
+        Loan late2 = loan("9780000020024", TODAY.minusDays(20), false);
+        loan("9780000020031", TODAY.minusDays(20), true); // devolvido
+        Loan late3 = loan("9780000020048", TODAY.minusDays(10), false);
+        loan("9780000020055", TODAY.minusDays(9), false); // ainda no prazo
+
+        //execucao
+        int first = scanner.scan(TODAY);
+        int again = scanner.scan(TODAY);
+        Loan late4 = loan("9780000020062", TODAY.minusDays(9), false);
+        int nextDay = scanner.scan(TODAY.plusDays(1));
+
+        //verificacao
+        assertThat(first).isEqualTo(3);
+        assertThat(again).isEqualTo(0);
+        assertThat(nextDay).isEqualTo(2); // od-5 e od-6 passaram do prazo
+        List<Long> outbox = jdbcTemplate.queryForList("select loan_id from loan_notification order by loan_id", Long.class);
+        assertThat(outbox).contains(late1.getId(), late2.getId(), late3.getId(), late4.getId()).hasSize(5);
+    }
+
+    @Test
+    @DisplayName("Deve entregar os avisos da outbox em lotes e apaga-los")
+    public void drainTest() {
+        //cenario
+        loan("9780000020079", TODAY.minusDays(15), false);
+        loan("9780000020086", TODAY.minusDays(15), false);
+        loan("9780000020093", TODAY.minusDays(15), false);
+        scanner.scan(TODAY);
+
+        //execucao
+        int delivered = consumer.drain();
+
+        //verificacao
+        assertThat(delivered).isEqualTo(3);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<LoanNotification>> batches = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(notifier, Mockito.times(2)).notify(batches.capture());
+        List<String> customers = batches.getAllValues().stream()
+                .flatMap(List::stream)
+                .map(LoanNotification::getCustomer)
+                .collect(Collectors.toList());
+        assertThat(customers).containsOnly("Fulano").hasSize(3);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from loan_notification", Long.class)).isEqualTo(0);
+    }
+
+    private Loan loan(String isbn, LocalDate loanDate, boolean returned) {
+        Book book = bookRepository.save(Book.builder().title("Aventuras").author("Cesar").isbn(isbn).build());
+        return loanRepository.save(Loan.builder()
+                .book(book)
+                .customer("Fulano")
+                .loanDate(loanDate)
+                .returned(returned)
+                .openBookId(returned ? null : book.getId())
+                .build());
+    }
+}